@@ -0,0 +1,373 @@
+package com.photowatermarkapp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.export")
+public class ExportProperties {
+
+    /**
+     * Size of the shared work-stealing pool that processes files. {@code 0} uses the number of available processors.
+     */
+    private int workerThreads;
+
+    /**
+     * Maximum number of files of a single job processed at the same time. {@code 0} uses {@link #workerThreads}.
+     */
+    private int perJobParallelism;
+
+    /**
+     * Default execution mode for jobs that do not choose one: {@code parallel} or {@code pipelined}.
+     */
+    private String mode = "parallel";
+
+    /**
+     * Jobs with at most this many files and no explicit priority are scheduled in the high-priority lane.
+     */
+    private int smallJobThreshold = 16;
+
+    /**
+     * Runs blocking upload reads and output writes on virtual threads (JDK 21+) so they do not occupy the bounded
+     * worker pool, which is then only used for decoding, rendering and encoding.
+     */
+    private boolean virtualThreads;
+
+    /**
+     * Share of the maximum heap that decoded images of all running jobs may occupy together.
+     */
+    private double memoryBudgetRatio = 0.6;
+
+    /**
+     * When an export downscales, images are decoded with source subsampling down to at least this multiple of the
+     * target size before the final resize. Subsampling simply drops pixels, so at {@code 1} a downscale by a whole
+     * factor skips the resize filter entirely and aliases fine detail. The default of {@code 2} always leaves at
+     * least a 2x reduction to the filter, at the cost of decoding and holding about four times as many pixels as
+     * subsampling straight to the target size would.
+     */
+    private double decodeOversampling = 2;
+
+    /**
+     * Exports JPEG inputs to JPEG at their own size by re-encoding only the blocks the watermark touches, as long as
+     * the requested quality is not lower than the source's.
+     */
+    private boolean jpegTranscode = true;
+
+    /**
+     * TIFF inputs with at least this many pixels are decoded and written strip by strip when exported to PNG
+     * without resizing.
+     */
+    private long tiledPixelThreshold = 100_000_000L;
+
+    /**
+     * Approximate number of pixels per strip of a strip-wise export.
+     */
+    private int stripPixels = 4 * 1024 * 1024;
+
+    /**
+     * Number of threads walking source directories of local exports.
+     */
+    private int scanThreads = 4;
+
+    /**
+     * Memory the pre-rendered text watermark sprites may occupy together, in bytes.
+     */
+    private long textSpriteCacheBytes = 32L * 1024 * 1024;
+
+    /**
+     * Memory decoded and pre-scaled image watermarks may occupy together, in bytes.
+     */
+    private long watermarkImageCacheBytes = 64L * 1024 * 1024;
+
+    /**
+     * Share of the maximum heap that idle pooled working rasters of JPEG exports may keep for reuse.
+     */
+    private double rasterPoolRatio = 0.1;
+
+    /**
+     * Keeps a journal of every running job in the storage directory, so that jobs interrupted by a restart continue
+     * where they stopped when the application starts again.
+     */
+    private boolean journal = true;
+
+    /**
+     * Interval in milliseconds at which journal records are forced to disk. Records are written immediately either
+     * way; this only bounds what an operating system crash can lose.
+     */
+    private long journalSyncMillis = 200;
+
+    /**
+     * Maximum number of finished jobs that are remembered; the oldest are forgotten first. Running jobs do not count.
+     */
+    private int historyLimit = 200;
+
+    /**
+     * Minutes a finished job is remembered.
+     */
+    private long historyRetentionMinutes = 24 * 60;
+
+    /**
+     * Seconds a finished job keeps its per-file results before it is reduced to its counters.
+     */
+    private long resultRetentionSeconds = 300;
+
+    /**
+     * Minimum interval in milliseconds between two progress events of the same job on an event stream.
+     */
+    private long progressEventMillis = 250;
+
+    private final Pipeline pipeline = new Pipeline();
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getPerJobParallelism() {
+        return perJobParallelism;
+    }
+
+    public void setPerJobParallelism(int perJobParallelism) {
+        this.perJobParallelism = perJobParallelism;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public int getSmallJobThreshold() {
+        return smallJobThreshold;
+    }
+
+    public void setSmallJobThreshold(int smallJobThreshold) {
+        this.smallJobThreshold = smallJobThreshold;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public double getMemoryBudgetRatio() {
+        return memoryBudgetRatio;
+    }
+
+    public void setMemoryBudgetRatio(double memoryBudgetRatio) {
+        this.memoryBudgetRatio = memoryBudgetRatio;
+    }
+
+    public double getDecodeOversampling() {
+        return decodeOversampling;
+    }
+
+    public void setDecodeOversampling(double decodeOversampling) {
+        this.decodeOversampling = decodeOversampling;
+    }
+
+    public boolean isJpegTranscode() {
+        return jpegTranscode;
+    }
+
+    public void setJpegTranscode(boolean jpegTranscode) {
+        this.jpegTranscode = jpegTranscode;
+    }
+
+    public long getTiledPixelThreshold() {
+        return tiledPixelThreshold;
+    }
+
+    public void setTiledPixelThreshold(long tiledPixelThreshold) {
+        this.tiledPixelThreshold = tiledPixelThreshold;
+    }
+
+    public int getStripPixels() {
+        return stripPixels;
+    }
+
+    public void setStripPixels(int stripPixels) {
+        this.stripPixels = stripPixels;
+    }
+
+    public int getScanThreads() {
+        return scanThreads;
+    }
+
+    public void setScanThreads(int scanThreads) {
+        this.scanThreads = scanThreads;
+    }
+
+    public long getTextSpriteCacheBytes() {
+        return textSpriteCacheBytes;
+    }
+
+    public void setTextSpriteCacheBytes(long textSpriteCacheBytes) {
+        this.textSpriteCacheBytes = textSpriteCacheBytes;
+    }
+
+    public long getWatermarkImageCacheBytes() {
+        return watermarkImageCacheBytes;
+    }
+
+    public void setWatermarkImageCacheBytes(long watermarkImageCacheBytes) {
+        this.watermarkImageCacheBytes = watermarkImageCacheBytes;
+    }
+
+    public double getRasterPoolRatio() {
+        return rasterPoolRatio;
+    }
+
+    public void setRasterPoolRatio(double rasterPoolRatio) {
+        this.rasterPoolRatio = rasterPoolRatio;
+    }
+
+    public boolean isJournal() {
+        return journal;
+    }
+
+    public void setJournal(boolean journal) {
+        this.journal = journal;
+    }
+
+    public long getJournalSyncMillis() {
+        return journalSyncMillis;
+    }
+
+    public void setJournalSyncMillis(long journalSyncMillis) {
+        this.journalSyncMillis = journalSyncMillis;
+    }
+
+    public int getHistoryLimit() {
+        return historyLimit;
+    }
+
+    public void setHistoryLimit(int historyLimit) {
+        this.historyLimit = historyLimit;
+    }
+
+    public long getHistoryRetentionMinutes() {
+        return historyRetentionMinutes;
+    }
+
+    public void setHistoryRetentionMinutes(long historyRetentionMinutes) {
+        this.historyRetentionMinutes = historyRetentionMinutes;
+    }
+
+    public long getResultRetentionSeconds() {
+        return resultRetentionSeconds;
+    }
+
+    public void setResultRetentionSeconds(long resultRetentionSeconds) {
+        this.resultRetentionSeconds = resultRetentionSeconds;
+    }
+
+    public long getProgressEventMillis() {
+        return progressEventMillis;
+    }
+
+    public void setProgressEventMillis(long progressEventMillis) {
+        this.progressEventMillis = progressEventMillis;
+    }
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public int resolveWorkerThreads() {
+        if (workerThreads > 0) {
+            return workerThreads;
+        }
+        return Math.max(2, Runtime.getRuntime().availableProcessors());
+    }
+
+    public int resolvePerJobParallelism() {
+        int workers = resolveWorkerThreads();
+        if (perJobParallelism > 0) {
+            return Math.min(perJobParallelism, workers);
+        }
+        return workers;
+    }
+
+    public long resolveMemoryBudgetBytes() {
+        double ratio = memoryBudgetRatio > 0 && memoryBudgetRatio <= 1 ? memoryBudgetRatio : 0.6;
+        return (long) (Runtime.getRuntime().maxMemory() * ratio);
+    }
+
+    public long resolveRasterPoolBytes() {
+        double ratio = rasterPoolRatio >= 0 && rasterPoolRatio <= 1 ? rasterPoolRatio : 0.1;
+        return (long) (Runtime.getRuntime().maxMemory() * ratio);
+    }
+
+    /**
+     * Stages of a pipelined job. Their steps run on the shared worker pool; the worker counts only limit how many
+     * steps of one stage of a job run at once.
+     */
+    public static class Pipeline {
+
+        private int decodeWorkers = 2;
+
+        /**
+         * {@code 0} uses half the available processors.
+         */
+        private int renderWorkers;
+
+        /**
+         * {@code 0} uses half the available processors.
+         */
+        private int encodeWorkers;
+
+        /**
+         * Number of items that may wait in front of a stage before the stage before it stops taking new ones.
+         */
+        private int queueCapacity = 4;
+
+        public int getDecodeWorkers() {
+            return decodeWorkers;
+        }
+
+        public void setDecodeWorkers(int decodeWorkers) {
+            this.decodeWorkers = decodeWorkers;
+        }
+
+        public int getRenderWorkers() {
+            return renderWorkers;
+        }
+
+        public void setRenderWorkers(int renderWorkers) {
+            this.renderWorkers = renderWorkers;
+        }
+
+        public int getEncodeWorkers() {
+            return encodeWorkers;
+        }
+
+        public void setEncodeWorkers(int encodeWorkers) {
+            this.encodeWorkers = encodeWorkers;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int resolveRenderWorkers() {
+            return renderWorkers > 0 ? renderWorkers : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        }
+
+        public int resolveEncodeWorkers() {
+            return encodeWorkers > 0 ? encodeWorkers : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.photowatermarkapp.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.fonts")
+public class FontProperties {
+
+    /**
+     * Directory below the storage directory that is scanned for user TTF and OTF files.
+     */
+    private String directory = "fonts";
+
+    /**
+     * How often the font catalog is rebuilt in the background. Zero or negative disables refreshing.
+     */
+    private Duration refreshInterval = Duration.ofMinutes(10);
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public void setRefreshInterval(Duration refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+}
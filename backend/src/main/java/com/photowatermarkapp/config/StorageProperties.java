@@ -19,6 +19,11 @@ public class StorageProperties {
     private String baseDir;
     private Path resolvedBaseDir;
 
+    /**
+     * Disk space finished exports kept for reuse by later jobs may occupy, in bytes. {@code 0} disables the cache.
+     */
+    private long renderCacheBytes = 1024L * 1024 * 1024;
+
     public String getBaseDir() {
         return ensureBaseDir().toString();
     }
@@ -28,6 +33,14 @@ public class StorageProperties {
         this.resolvedBaseDir = null;
     }
 
+    public long getRenderCacheBytes() {
+        return renderCacheBytes;
+    }
+
+    public void setRenderCacheBytes(long renderCacheBytes) {
+        this.renderCacheBytes = renderCacheBytes;
+    }
+
     public Path resolve(String first, String... more) {
         Path root = ensureBaseDir();
         return more == null || more.length == 0 ? root.resolve(first) : root.resolve(Paths.get(first, more));
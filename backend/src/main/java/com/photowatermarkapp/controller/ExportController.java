@@ -1,24 +1,45 @@
 package com.photowatermarkapp.controller;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.photowatermarkapp.model.export.ExportJob;
+import com.photowatermarkapp.model.export.ExportJobDelta;
+import com.photowatermarkapp.model.export.ExportJobStatus;
 import com.photowatermarkapp.model.export.ExportJobView;
+import com.photowatermarkapp.model.export.ExportResultPage;
 import com.photowatermarkapp.model.export.ExportRequest;
+import com.photowatermarkapp.model.export.LocalExportRequest;
 import com.photowatermarkapp.service.ExportService;
+import com.photowatermarkapp.service.export.ExportIngest;
+import com.photowatermarkapp.util.MultipartStreamParser;
+import com.photowatermarkapp.util.WeightedLruCache;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 
 @RestController
 @RequestMapping("/api/export")
@@ -42,6 +63,63 @@ public class ExportController {
         return ResponseEntity.accepted().body(ExportJobView.from(job));
     }
 
+    /**
+     * Streaming variant of {@link #submitExport}: the body is read part by part and every file is queued for export
+     * as soon as it has arrived. The {@code config} part must come before the files. Clients may choose the job id
+     * up front so they can follow progress while the upload is still running.
+     */
+    @PostMapping(path = { "/stream", "/stream/{jobId}" }, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ExportJobView> streamExport(
+            @PathVariable(required = false) String jobId,
+            HttpServletRequest servletRequest) throws IOException {
+        String boundary = MultipartStreamParser.extractBoundary(servletRequest.getContentType());
+        if (boundary == null) {
+            throw new IllegalArgumentException("Multipart boundary is missing");
+        }
+
+        AtomicReference<ExportIngest> ingest = new AtomicReference<>();
+        try {
+            MultipartStreamParser.parse(servletRequest.getInputStream(), boundary, (part, content) -> {
+                if ("config".equals(part.name()) && ingest.get() == null) {
+                    ExportRequest request = objectMapper.readValue(content, ExportRequest.class);
+                    ingest.set(exportService.beginStreamingExport(request, jobId));
+                } else if ("files".equals(part.name()) && part.isFile()) {
+                    if (ingest.get() == null) {
+                        throw new IllegalArgumentException("The config part must be sent before the files");
+                    }
+                    ingest.get().addFile(part.filename(), content);
+                }
+            });
+        } catch (IOException | RuntimeException ex) {
+            if (ingest.get() != null) {
+                ingest.get().abort(ex);
+            }
+            throw ex;
+        }
+
+        if (ingest.get() == null) {
+            throw new IllegalArgumentException("Export configuration must be provided");
+        }
+        ingest.get().complete();
+        return ResponseEntity.accepted().body(ExportJobView.from(ingest.get().getJob()));
+    }
+
+    /**
+     * Reads and writes arbitrary paths of this machine, so it only serves clients on the same machine, and only
+     * pages served from it: a request from another host, or one a browser sends on behalf of another site, is
+     * refused.
+     */
+    @PostMapping(path = "/local", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ExportJobView> submitLocalExport(@Valid @RequestBody LocalExportRequest request,
+            HttpServletRequest servletRequest) {
+        String origin = servletRequest.getHeader(HttpHeaders.ORIGIN);
+        if (!isLoopback(servletRequest.getRemoteAddr()) || (origin != null && !isLocalOrigin(origin))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        ExportJob job = exportService.submitLocalExport(request);
+        return ResponseEntity.accepted().body(ExportJobView.from(job));
+    }
+
     @GetMapping("/{jobId}/status")
     public ResponseEntity<ExportJobView> getStatus(@PathVariable String jobId) {
         return exportService.findJob(jobId)
@@ -49,6 +127,37 @@ public class ExportController {
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    /**
+     * Per-file results of a job in file order, {@code limit} at a time. {@code after} is the number of results to
+     * skip, normally the {@code next} cursor of the previous page; {@code success} keeps only the successful or only
+     * the failed files.
+     */
+    @GetMapping("/{jobId}/results")
+    public ResponseEntity<ExportResultPage> getResults(@PathVariable String jobId,
+            @RequestParam(defaultValue = "0") int after,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) Boolean success) {
+        return exportService.findResults(jobId, after, limit, success)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Progress of one job as server-sent events carrying only what changed; see {@link ExportJobDelta}.
+     */
+    @GetMapping(path = "/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJob(@PathVariable String jobId,
+            @RequestParam(defaultValue = "all") String results) {
+        return exportService.streamJob(jobId, results)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJobs() {
+        return exportService.streamJobs();
+    }
+
     @PostMapping("/{jobId}/cancel")
     public ResponseEntity<ExportJobView> cancelJob(@PathVariable String jobId) {
         boolean cancelled = exportService.cancelJob(jobId);
@@ -60,8 +169,40 @@ public class ExportController {
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/cache-stats")
+    public Map<String, WeightedLruCache.Stats> cacheStats() {
+        return exportService.cacheStats();
+    }
+
     @GetMapping
-    public List<ExportJobView> listJobs() {
-        return exportService.listJobs();
+    public List<ExportJobView> listJobs(
+            @RequestParam(required = false) ExportJobStatus status,
+            @RequestParam(defaultValue = "50") int limit) {
+        return exportService.listJobs(status, limit);
+    }
+
+    private static boolean isLocalOrigin(String origin) {
+        try {
+            String host = URI.create(origin).getHost();
+            return host != null && ("localhost".equalsIgnoreCase(host) || isLoopback(host));
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether {@code address}, an IP literal, is a loopback address. Host names are never looked up.
+     */
+    private static boolean isLoopback(String address) {
+        boolean literal = address != null && !address.isEmpty() && (address.indexOf(':') >= 0
+                || address.chars().allMatch(c -> c == '.' || Character.isDigit(c)));
+        if (!literal) {
+            return false;
+        }
+        try {
+            return InetAddress.getByName(address).isLoopbackAddress();
+        } catch (UnknownHostException ex) {
+            return false;
+        }
     }
 }
@@ -2,7 +2,11 @@ package com.photowatermarkapp.controller;
 
 import java.util.List;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -19,7 +23,12 @@ public class FontController {
     }
 
     @GetMapping
-    public List<String> listFonts() {
-        return fontService.listSystemFonts();
+    public ResponseEntity<List<String>> listFonts(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        FontService.FontCatalog catalog = fontService.getCatalog();
+        if (catalog.etag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(catalog.etag()).build();
+        }
+        return ResponseEntity.ok().eTag(catalog.etag()).body(catalog.families());
     }
 }
\ No newline at end of file
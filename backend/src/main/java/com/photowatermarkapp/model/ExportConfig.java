@@ -8,6 +8,14 @@ public class ExportConfig {
     private String outputDir;
     private String format;
     private Integer jpegQuality;
+    private String jpegPreset; // fast | balanced | smallest
+    private String jpegChromaSubsampling; // 4:2:0 | 4:4:4
+    /** Deflate level of PNG output, 0 (fastest) to 9 (smallest); 4 when unset. */
+    private Integer pngCompressionLevel;
+    /** Copies EXIF, XMP and ICC metadata of the source into the output; on unless set to false. */
+    private Boolean preserveMetadata;
+    /** Writes into outputDir itself and skips inputs whose output is still up to date. */
+    private Boolean incremental;
     private ResizeConfig resize;
     private NamingRule naming;
 
@@ -35,6 +43,46 @@ public class ExportConfig {
         this.jpegQuality = jpegQuality;
     }
 
+    public String getJpegPreset() {
+        return jpegPreset;
+    }
+
+    public void setJpegPreset(String jpegPreset) {
+        this.jpegPreset = jpegPreset;
+    }
+
+    public String getJpegChromaSubsampling() {
+        return jpegChromaSubsampling;
+    }
+
+    public void setJpegChromaSubsampling(String jpegChromaSubsampling) {
+        this.jpegChromaSubsampling = jpegChromaSubsampling;
+    }
+
+    public Integer getPngCompressionLevel() {
+        return pngCompressionLevel;
+    }
+
+    public void setPngCompressionLevel(Integer pngCompressionLevel) {
+        this.pngCompressionLevel = pngCompressionLevel;
+    }
+
+    public Boolean getPreserveMetadata() {
+        return preserveMetadata;
+    }
+
+    public void setPreserveMetadata(Boolean preserveMetadata) {
+        this.preserveMetadata = preserveMetadata;
+    }
+
+    public Boolean getIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(Boolean incremental) {
+        this.incremental = incremental;
+    }
+
     public ResizeConfig getResize() {
         return resize;
     }
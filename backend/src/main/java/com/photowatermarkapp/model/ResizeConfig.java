@@ -9,6 +9,7 @@ public class ResizeConfig {
     private Integer width;
     private Integer height;
     private Double percent;
+    private String quality; // fast | balanced | high
 
     public String getMode() {
         return mode;
@@ -41,4 +42,12 @@ public class ResizeConfig {
     public void setPercent(Double percent) {
         this.percent = percent;
     }
-}
\ No newline at end of file
+
+    public String getQuality() {
+        return quality;
+    }
+
+    public void setQuality(String quality) {
+        this.quality = quality;
+    }
+}
@@ -0,0 +1,83 @@
+package com.photowatermarkapp.model.export;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Encoder parameters an output file was written with. Fields that do not apply to the format are left out.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EncoderSettings {
+
+    private String format;
+    private String preset;
+    private Integer quality;
+    private Boolean optimizedHuffman;
+    private Boolean progressive;
+    private String chromaSubsampling;
+    private Integer compressionLevel;
+    private Boolean transcoded;
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public String getPreset() {
+        return preset;
+    }
+
+    public void setPreset(String preset) {
+        this.preset = preset;
+    }
+
+    public Integer getQuality() {
+        return quality;
+    }
+
+    public void setQuality(Integer quality) {
+        this.quality = quality;
+    }
+
+    public Boolean getOptimizedHuffman() {
+        return optimizedHuffman;
+    }
+
+    public void setOptimizedHuffman(Boolean optimizedHuffman) {
+        this.optimizedHuffman = optimizedHuffman;
+    }
+
+    public Boolean getProgressive() {
+        return progressive;
+    }
+
+    public void setProgressive(Boolean progressive) {
+        this.progressive = progressive;
+    }
+
+    public String getChromaSubsampling() {
+        return chromaSubsampling;
+    }
+
+    public void setChromaSubsampling(String chromaSubsampling) {
+        this.chromaSubsampling = chromaSubsampling;
+    }
+
+    public Integer getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(Integer compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public Boolean getTranscoded() {
+        return transcoded;
+    }
+
+    public void setTranscoded(Boolean transcoded) {
+        this.transcoded = transcoded;
+    }
+}
@@ -8,7 +8,10 @@ public class ExportFileResult {
     private String sourceName;
     private String outputName;
     private boolean success;
+    private Boolean skipped;
+    private Boolean cached;
     private String message;
+    private EncoderSettings encoder;
 
     public String getSourceName() {
         return sourceName;
@@ -34,6 +37,22 @@ public class ExportFileResult {
         this.success = success;
     }
 
+    public Boolean getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(Boolean skipped) {
+        this.skipped = skipped;
+    }
+
+    public Boolean getCached() {
+        return cached;
+    }
+
+    public void setCached(Boolean cached) {
+        this.cached = cached;
+    }
+
     public String getMessage() {
         return message;
     }
@@ -41,4 +60,12 @@ public class ExportFileResult {
     public void setMessage(String message) {
         this.message = message;
     }
+
+    public EncoderSettings getEncoder() {
+        return encoder;
+    }
+
+    public void setEncoder(EncoderSettings encoder) {
+        this.encoder = encoder;
+    }
 }
@@ -1,10 +1,14 @@
 package com.photowatermarkapp.model.export;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -24,12 +28,33 @@ public class ExportJob {
     private final AtomicInteger processedFiles = new AtomicInteger();
     private final AtomicInteger successCount = new AtomicInteger();
     private final AtomicInteger failureCount = new AtomicInteger();
+    private final AtomicInteger skippedCount = new AtomicInteger();
 
-    private final List<ExportFileResult> results = new CopyOnWriteArrayList<>();
+    /** Results in file order, guarded by the job's lock. */
+    @JsonIgnore
+    private final List<ExportFileResult> results = new ArrayList<>();
+    /** Positions of the failed results in {@link #results}, ascending. */
+    @JsonIgnore
+    private final List<Integer> failedPositions = new ArrayList<>();
+
+    @JsonIgnore
+    private final Map<Integer, ExportFileResult> pendingResults = new HashMap<>();
+    @JsonIgnore
+    private int nextResultIndex;
+
+    @JsonIgnore
+    private volatile Supplier<Map<String, Integer>> stageQueueDepths;
 
     @JsonIgnore
     private final AtomicBoolean cancelRequested = new AtomicBoolean(false);
 
+    /** Called with the previous and the new status on every status change, while the job is locked. */
+    @JsonIgnore
+    private volatile BiConsumer<ExportJobStatus, ExportJobStatus> statusListener;
+
+    @JsonIgnore
+    private volatile boolean compacted;
+
     public ExportJob(String id) {
         this.id = id;
         this.createdAt = Instant.now();
@@ -57,9 +82,25 @@ public class ExportJob {
         return status;
     }
 
-    public void setStatus(ExportJobStatus status) {
+    public synchronized void setStatus(ExportJobStatus status) {
+        ExportJobStatus previous = this.status;
         this.status = status;
         this.updatedAt = Instant.now();
+        BiConsumer<ExportJobStatus, ExportJobStatus> listener = statusListener;
+        if (listener != null && previous != status) {
+            listener.accept(previous, status);
+        }
+    }
+
+    public void setStatusListener(BiConsumer<ExportJobStatus, ExportJobStatus> statusListener) {
+        this.statusListener = statusListener;
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        ExportJobStatus current = status;
+        return current == ExportJobStatus.COMPLETED || current == ExportJobStatus.FAILED
+                || current == ExportJobStatus.CANCELLED;
     }
 
     public String getMessage() {
@@ -120,15 +161,124 @@ public class ExportJob {
         failureCount.incrementAndGet();
     }
 
-    public List<ExportFileResult> getResults() {
-        return results;
+    public int getSkippedCount() {
+        return skippedCount.get();
     }
 
-    public void addResult(ExportFileResult result) {
-        results.add(result);
+    public void incrementSkipped() {
+        skippedCount.incrementAndGet();
+    }
+
+    @JsonIgnore
+    public synchronized int getResultCount() {
+        return results.size();
+    }
+
+    /**
+     * Records the result of the file at {@code index} in the submitted batch. Results completed out of order are held
+     * back until every earlier file has finished, so {@link #resultsFrom} and {@link #resultsAfter} always follow the
+     * original file order.
+     */
+    public synchronized void recordResult(int index, ExportFileResult result) {
+        if (compacted) {
+            this.updatedAt = Instant.now();
+            return;
+        }
+        pendingResults.put(index, result);
+        ExportFileResult next;
+        while ((next = pendingResults.remove(nextResultIndex)) != null) {
+            appendResult(next);
+            nextResultIndex++;
+        }
         this.updatedAt = Instant.now();
     }
 
+    /**
+     * Copy of the results from position {@code index} on, empty when there are none.
+     */
+    public synchronized List<ExportFileResult> resultsFrom(int index) {
+        int size = results.size();
+        return index >= size ? List.of() : new ArrayList<>(results.subList(index, size));
+    }
+
+    /**
+     * Up to {@code limit} results behind the first {@code after}, optionally only the successful or only the failed
+     * ones. The cost depends on the page, not on the number of results: failures are found through their positions,
+     * successes by skipping the failures in between.
+     */
+    public synchronized ExportResultPage resultsAfter(int after, int limit, Boolean success) {
+        int size = results.size();
+        int position = Math.min(Math.max(after, 0), size);
+        List<ExportFileResult> page = new ArrayList<>(Math.min(limit, size - position));
+        if (Boolean.FALSE.equals(success)) {
+            int low = 0;
+            int high = failedPositions.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (failedPositions.get(mid) < position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            position = size;
+            for (int i = low; i < failedPositions.size(); i++) {
+                if (page.size() >= limit) {
+                    position = failedPositions.get(i);
+                    break;
+                }
+                page.add(results.get(failedPositions.get(i)));
+            }
+        } else {
+            for (; position < size && page.size() < limit; position++) {
+                ExportFileResult result = results.get(position);
+                if (success == null || result.isSuccess()) {
+                    page.add(result);
+                }
+            }
+        }
+        return new ExportResultPage(page, position, size, compacted ? Boolean.TRUE : null);
+    }
+
+    private void appendResult(ExportFileResult result) {
+        if (!result.isSuccess()) {
+            failedPositions.add(results.size());
+        }
+        results.add(result);
+    }
+
+    public Map<String, Integer> getStageQueueDepths() {
+        Supplier<Map<String, Integer>> supplier = stageQueueDepths;
+        return supplier == null ? null : supplier.get();
+    }
+
+    public void setStageQueueDepths(Supplier<Map<String, Integer>> stageQueueDepths) {
+        this.stageQueueDepths = stageQueueDepths;
+    }
+
+    /**
+     * Publishes results that are still held back because an earlier file never completed, e.g. after cancellation.
+     */
+    public synchronized void flushPendingResults() {
+        pendingResults.keySet().stream().sorted().forEach(index -> appendResult(pendingResults.get(index)));
+        pendingResults.clear();
+    }
+
+    /**
+     * Drops the per-file results of a finished job, keeping only its counters. Results arriving later, from files
+     * that were still in flight when the job was cancelled, are dropped as well.
+     */
+    public synchronized void compact() {
+        compacted = true;
+        results.clear();
+        failedPositions.clear();
+        pendingResults.clear();
+    }
+
+    public boolean isCompacted() {
+        return compacted;
+    }
+
     public boolean isCancelRequested() {
         return cancelRequested.get();
     }
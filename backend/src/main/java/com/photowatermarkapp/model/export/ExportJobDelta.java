@@ -0,0 +1,133 @@
+package com.photowatermarkapp.model.export;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Progress event of an export job: only the fields that changed since the previous event of the same stream. The
+ * first event of a stream carries every field. {@code results} are the results appended since {@code resultsFrom},
+ * their position in the job's result list. Streams that carry only some of the results, e.g. the failed ones, leave
+ * {@code resultsFrom} out: their results continue the ones sent before.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ExportJobDelta {
+
+    private String id;
+    private ExportJobStatus status;
+    private String message;
+    private String currentFile;
+    private Integer totalFiles;
+    private Integer processedFiles;
+    private Integer successCount;
+    private Integer failureCount;
+    private Integer skippedCount;
+    private Double progress;
+    private Integer resultsFrom;
+    private List<ExportFileResult> results;
+    private Boolean compacted;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public ExportJobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ExportJobStatus status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getCurrentFile() {
+        return currentFile;
+    }
+
+    public void setCurrentFile(String currentFile) {
+        this.currentFile = currentFile;
+    }
+
+    public Integer getTotalFiles() {
+        return totalFiles;
+    }
+
+    public void setTotalFiles(Integer totalFiles) {
+        this.totalFiles = totalFiles;
+    }
+
+    public Integer getProcessedFiles() {
+        return processedFiles;
+    }
+
+    public void setProcessedFiles(Integer processedFiles) {
+        this.processedFiles = processedFiles;
+    }
+
+    public Integer getSuccessCount() {
+        return successCount;
+    }
+
+    public void setSuccessCount(Integer successCount) {
+        this.successCount = successCount;
+    }
+
+    public Integer getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(Integer failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    public Integer getSkippedCount() {
+        return skippedCount;
+    }
+
+    public void setSkippedCount(Integer skippedCount) {
+        this.skippedCount = skippedCount;
+    }
+
+    public Double getProgress() {
+        return progress;
+    }
+
+    public void setProgress(Double progress) {
+        this.progress = progress;
+    }
+
+    public Integer getResultsFrom() {
+        return resultsFrom;
+    }
+
+    public void setResultsFrom(Integer resultsFrom) {
+        this.resultsFrom = resultsFrom;
+    }
+
+    public List<ExportFileResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<ExportFileResult> results) {
+        this.results = results;
+    }
+
+    public Boolean getCompacted() {
+        return compacted;
+    }
+
+    public void setCompacted(Boolean compacted) {
+        this.compacted = compacted;
+    }
+}
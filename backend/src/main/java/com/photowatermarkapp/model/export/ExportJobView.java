@@ -1,10 +1,14 @@
 package com.photowatermarkapp.model.export;
 
 import java.time.Instant;
-import java.util.List;
+import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+/**
+ * Summary of a job: counters and status, but not the per-file results, so that it stays the same size however many
+ * files the job has. Results are read page by page through {@link ExportResultPage}.
+ */
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class ExportJobView {
 
@@ -17,10 +21,13 @@ public class ExportJobView {
     private int processedFiles;
     private int successCount;
     private int failureCount;
+    private int skippedCount;
     private double progress;
     private Instant createdAt;
     private Instant updatedAt;
-    private List<ExportFileResult> results;
+    private int resultCount;
+    private Boolean compacted;
+    private Map<String, Integer> stageQueueDepths;
 
     public static ExportJobView from(ExportJob job) {
         ExportJobView view = new ExportJobView();
@@ -33,10 +40,15 @@ public class ExportJobView {
         view.processedFiles = job.getProcessedFiles();
         view.successCount = job.getSuccessCount();
         view.failureCount = job.getFailureCount();
+        view.skippedCount = job.getSkippedCount();
         view.progress = view.totalFiles == 0 ? 0d : (double) view.processedFiles / view.totalFiles;
         view.createdAt = job.getCreatedAt();
         view.updatedAt = job.getUpdatedAt();
-        view.results = job.getResults();
+        view.resultCount = job.getResultCount();
+        if (job.isCompacted()) {
+            view.compacted = true;
+        }
+        view.stageQueueDepths = job.getStageQueueDepths();
         return view;
     }
 
@@ -76,6 +88,10 @@ public class ExportJobView {
         return failureCount;
     }
 
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
     public double getProgress() {
         return progress;
     }
@@ -88,7 +104,21 @@ public class ExportJobView {
         return updatedAt;
     }
 
-    public List<ExportFileResult> getResults() {
-        return results;
+    /**
+     * Number of per-file results that can be read so far.
+     */
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    /**
+     * {@code true} once the job is old enough that its per-file results were dropped.
+     */
+    public Boolean getCompacted() {
+        return compacted;
+    }
+
+    public Map<String, Integer> getStageQueueDepths() {
+        return stageQueueDepths;
     }
 }
@@ -16,6 +16,10 @@ public class ExportRequest {
     @Valid
     private ExportConfig exportConfig;
 
+    private String executionMode; // parallel | pipelined
+
+    private String priority; // high | normal | low
+
     public WatermarkConfig getWatermarkConfig() {
         return watermarkConfig;
     }
@@ -31,4 +35,20 @@ public class ExportRequest {
     public void setExportConfig(ExportConfig exportConfig) {
         this.exportConfig = exportConfig;
     }
+
+    public String getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(String executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public String getPriority() {
+        return priority;
+    }
+
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
 }
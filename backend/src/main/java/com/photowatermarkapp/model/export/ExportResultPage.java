@@ -0,0 +1,45 @@
+package com.photowatermarkapp.model.export;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One page of the per-file results of a job. {@code next} is the cursor for the following page: pass it as
+ * {@code after} to continue. {@code total} is the number of results recorded so far; a running job may add more
+ * behind {@code next} later.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ExportResultPage {
+
+    private final List<ExportFileResult> results;
+    private final int next;
+    private final int total;
+    private final Boolean compacted;
+
+    public ExportResultPage(List<ExportFileResult> results, int next, int total, Boolean compacted) {
+        this.results = results;
+        this.next = next;
+        this.total = total;
+        this.compacted = compacted;
+    }
+
+    public List<ExportFileResult> getResults() {
+        return results;
+    }
+
+    public int getNext() {
+        return next;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * {@code true} once the job is old enough that its per-file results were dropped.
+     */
+    public Boolean getCompacted() {
+        return compacted;
+    }
+}
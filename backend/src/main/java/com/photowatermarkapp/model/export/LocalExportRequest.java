@@ -0,0 +1,39 @@
+package com.photowatermarkapp.model.export;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotEmpty;
+
+public class LocalExportRequest extends ExportRequest {
+
+    @NotEmpty
+    private List<String> paths; // absolute files or directories
+
+    private Boolean recursive;
+
+    private List<String> includes; // glob patterns, e.g. *.jpg or raw/**/*.tif
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public void setPaths(List<String> paths) {
+        this.paths = paths;
+    }
+
+    public Boolean getRecursive() {
+        return recursive;
+    }
+
+    public void setRecursive(Boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public void setIncludes(List<String> includes) {
+        this.includes = includes;
+    }
+}
@@ -6,41 +6,71 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
-import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+import java.awt.font.FontRenderContext;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.OutputStream;
 import java.io.ByteArrayInputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Base64;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
-import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.photowatermarkapp.config.ExportProperties;
 import com.photowatermarkapp.config.StorageProperties;
 import com.photowatermarkapp.model.ExportConfig;
 import com.photowatermarkapp.model.ImageWatermarkConfig;
@@ -51,18 +81,55 @@ import com.photowatermarkapp.model.ShadowStyle;
 import com.photowatermarkapp.model.StrokeStyle;
 import com.photowatermarkapp.model.TextWatermarkConfig;
 import com.photowatermarkapp.model.WatermarkConfig;
+import com.photowatermarkapp.model.export.EncoderSettings;
 import com.photowatermarkapp.model.export.ExportFileResult;
 import com.photowatermarkapp.model.export.ExportJob;
 import com.photowatermarkapp.model.export.ExportJobStatus;
 import com.photowatermarkapp.model.export.ExportJobView;
+import com.photowatermarkapp.model.export.ExportResultPage;
 import com.photowatermarkapp.model.export.ExportRequest;
+import com.photowatermarkapp.model.export.LocalExportRequest;
+import com.photowatermarkapp.service.export.AlphaCompositor;
+import com.photowatermarkapp.service.export.DirectoryScanner;
+import com.photowatermarkapp.service.export.ExportIngest;
+import com.photowatermarkapp.service.export.ExportJobRegistry;
+import com.photowatermarkapp.service.export.ExportManifest;
+import com.photowatermarkapp.service.export.ExportProgressStreams;
+import com.photowatermarkapp.service.export.FairExportScheduler;
+import com.photowatermarkapp.service.export.ImageMetadata;
+import com.photowatermarkapp.service.export.JobInputs;
+import com.photowatermarkapp.service.export.JobJournal;
+import com.photowatermarkapp.service.export.JpegEncoding;
+import com.photowatermarkapp.service.export.JpegSegments;
+import com.photowatermarkapp.service.export.JpegTranscoder;
+import com.photowatermarkapp.service.export.MemoryBudget;
+import com.photowatermarkapp.service.export.PngEncoder;
+import com.photowatermarkapp.service.export.RasterPool;
+import com.photowatermarkapp.service.export.RenderCache;
+import com.photowatermarkapp.service.export.ResizeEngine;
+import com.photowatermarkapp.service.export.SourceFile;
+import com.photowatermarkapp.service.export.StagedPipeline;
+import com.photowatermarkapp.service.export.StripedImage;
+import com.photowatermarkapp.service.export.VirtualThreads;
+import com.photowatermarkapp.service.export.WatermarkImageCache;
 import com.photowatermarkapp.util.ColorUtils;
+import com.photowatermarkapp.util.WeightedLruCache;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 
 @Service
 public class ExportService {
 
+    private static final Logger log = LoggerFactory.getLogger(ExportService.class);
+
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final String STAGING_DIR = "staging";
+    private static final String RENDER_CACHE_DIR = "render-cache";
+    private static final String JOURNAL_DIR = "journal";
+    private static final int MAX_LIST_LIMIT = 500;
+    private static final int MAX_RESULT_PAGE_LIMIT = 1000;
+
     private static final Map<String, double[]> PRESET_POSITIONS = Map.ofEntries(
             Map.entry("top-left", new double[] { 0.1, 0.15 }),
             Map.entry("top-center", new double[] { 0.5, 0.15 }),
@@ -75,55 +142,451 @@ public class ExportService {
             Map.entry("bottom-right", new double[] { 0.85, 0.9 }));
 
     private final StorageProperties storageProperties;
+    private final ExportProperties exportProperties;
+    private final FontService fontService;
+    private final ObjectMapper objectMapper;
     private final ExecutorService executor;
+    private final FairExportScheduler scheduler;
+    private final ExecutorService ioExecutor;
+    private final int perJobParallelism;
+    private final ResizeEngine resizeEngine;
+    private final PngEncoder pngEncoder;
+    private final RasterPool rasterPool;
 
     static {
         ImageIO.scanForPlugins();
     }
-    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final ExportJobRegistry jobs;
+    private final ExportProgressStreams progressStreams;
+    private final Map<String, JobInputs> activeInputs = new ConcurrentHashMap<>();
+    private final Map<String, IncrementalExport> incrementalJobs = new ConcurrentHashMap<>();
+    /** Output directories an incremental job is writing into, with the id of that job. */
+    private final Map<Path, String> incrementalDirectories = new ConcurrentHashMap<>();
+    /** Configuration hash of every running job, for looking up its files in {@link #renderCache}. */
+    private final Map<String, String> renderConfigHashes = new ConcurrentHashMap<>();
+    private final Map<String, JobJournal> journals = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService journalSyncer;
+    private final MemoryBudget memoryBudget;
+    private final DirectoryScanner directoryScanner;
+    private final WeightedLruCache<TextSpriteKey, TextSprite> textSprites;
+    private final WatermarkImageCache watermarkImages;
+    private final RenderCache renderCache;
 
-    public ExportService(StorageProperties storageProperties) {
+    public ExportService(StorageProperties storageProperties, ExportProperties exportProperties,
+            FontService fontService, ObjectMapper objectMapper) {
         this.storageProperties = storageProperties;
-        int cpu = Math.max(2, Runtime.getRuntime().availableProcessors());
-        this.executor = Executors.newFixedThreadPool(cpu);
+        this.exportProperties = exportProperties;
+        this.fontService = fontService;
+        this.objectMapper = objectMapper;
+        this.jobs = new ExportJobRegistry(exportProperties.getHistoryLimit(),
+                Duration.ofMinutes(exportProperties.getHistoryRetentionMinutes()),
+                Duration.ofSeconds(exportProperties.getResultRetentionSeconds()), Clock.systemUTC());
+        this.progressStreams = new ExportProgressStreams(exportProperties.getProgressEventMillis(), jobs::active);
+        jobs.setChangeListener(progressStreams::jobChanged);
+        int workers = exportProperties.resolveWorkerThreads();
+        ForkJoinPool workerPool = new ForkJoinPool(workers, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null,
+                true);
+        this.executor = workerPool;
+        this.resizeEngine = new ResizeEngine(workerPool);
+        this.pngEncoder = new PngEncoder(workerPool);
+        this.rasterPool = new RasterPool(exportProperties.resolveRasterPoolBytes());
+        this.scheduler = new FairExportScheduler(executor, workers);
+        this.perJobParallelism = exportProperties.resolvePerJobParallelism();
+        this.ioExecutor = exportProperties.isVirtualThreads() ? createVirtualIoExecutor() : null;
+        this.memoryBudget = new MemoryBudget(exportProperties.resolveMemoryBudgetBytes());
+        this.directoryScanner = new DirectoryScanner(exportProperties.getScanThreads());
+        this.textSprites = new WeightedLruCache<>(exportProperties.getTextSpriteCacheBytes(), TextSprite::sizeInBytes);
+        this.watermarkImages = new WatermarkImageCache(exportProperties.getWatermarkImageCacheBytes());
+        this.renderCache = openRenderCache(storageProperties, exportProperties);
+        this.journalSyncer = exportProperties.isJournal() ? startJournalSyncer(exportProperties) : null;
+    }
+
+    /**
+     * Forces the records of all running jobs to disk at a fixed interval, so that a busy job pays for one sync per
+     * interval rather than one per file.
+     */
+    private ScheduledExecutorService startJournalSyncer(ExportProperties exportProperties) {
+        ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "export-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(10, exportProperties.getJournalSyncMillis());
+        syncer.scheduleWithFixedDelay(() -> journals.values().forEach(journal -> {
+            try {
+                journal.sync();
+            } catch (IOException ex) {
+                log.warn("Failed to sync export journal: {}", ex.getMessage());
+            }
+        }), interval, interval, TimeUnit.MILLISECONDS);
+        return syncer;
+    }
+
+    private static RenderCache openRenderCache(StorageProperties storageProperties,
+            ExportProperties exportProperties) {
+        if (storageProperties.getRenderCacheBytes() <= 0) {
+            return null;
+        }
+        String settings = "jpegTranscode=" + exportProperties.isJpegTranscode()
+                + ";decodeOversampling=" + exportProperties.getDecodeOversampling()
+                + ";tiledPixelThreshold=" + exportProperties.getTiledPixelThreshold();
+        Path directory = storageProperties.resolve(RENDER_CACHE_DIR);
+        try {
+            return RenderCache.open(directory, storageProperties.getRenderCacheBytes(), settings);
+        } catch (IOException ex) {
+            log.warn("Render cache in {} is not available: {}", directory, ex.getMessage());
+            return null;
+        }
+    }
+
+    private static ExecutorService createVirtualIoExecutor() {
+        Optional<ExecutorService> virtual = VirtualThreads.newPerTaskExecutor();
+        if (virtual.isEmpty()) {
+            log.warn("Virtual threads require JDK 21 or newer; export I/O stays on the worker pool");
+        }
+        return virtual.orElse(null);
     }
 
     @PreDestroy
     public void shutdown() {
+        // Closed before the workers are interrupted, so that files failing from the interruption are not journaled
+        // as done and are exported again after the restart.
+        journals.values().forEach(journal -> {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                log.warn("Failed to close export journal: {}", ex.getMessage());
+            }
+        });
+        if (journalSyncer != null) {
+            journalSyncer.shutdownNow();
+        }
+        progressStreams.shutdown();
         executor.shutdownNow();
+        directoryScanner.shutdown();
+        if (ioExecutor != null) {
+            ioExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Continues the jobs whose journals were left behind by a restart or crash, with the files that have no result
+     * yet.
+     */
+    @PostConstruct
+    public void resumeJournaledJobs() {
+        if (journalSyncer == null) {
+            return;
+        }
+        Path directory = storageProperties.resolve(JOURNAL_DIR);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + JobJournal.SUFFIX)) {
+            stream.forEach(files::add);
+        } catch (IOException ex) {
+            log.warn("Failed to list export journals in {}: {}", directory, ex.getMessage());
+            return;
+        }
+        for (Path file : files) {
+            try {
+                resumeJob(file);
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Cannot resume export job from {}: {}", file, ex.getMessage());
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    private void resumeJob(Path file) throws IOException {
+        JobJournal.Replay replay = JobJournal.read(file, objectMapper);
+        ExportRequest request = replay.request();
+        Path outputDir = replay.outputDir();
+        ensureDirectory(outputDir);
+        JobSetup setup = registerJob(request, replay.jobId(), outputDir);
+        ExportJob job = setup.job();
+
+        BitSet completed = new BitSet();
+        replay.results().entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> {
+                    ExportFileResult result = entry.getValue();
+                    if (Boolean.TRUE.equals(result.getSkipped())) {
+                        job.incrementSkipped();
+                    } else if (result.isSuccess()) {
+                        job.incrementSuccess();
+                    } else {
+                        job.incrementFailure();
+                    }
+                    job.recordResult(entry.getKey(), result);
+                    job.incrementProcessed();
+                    completed.set(entry.getKey());
+                });
+        // Whatever an interrupted attempt left in the output directory is replaced when the file is exported again.
+        replay.outputs().forEach((index, name) -> {
+            if (!completed.get(index)) {
+                deleteQuietly(outputDir.resolve(name));
+            }
+        });
+
+        Path stagingDir = replay.kind() == JobJournal.Kind.LOCAL ? null
+                : storageProperties.resolve(STAGING_DIR, job.getId());
+        JobInputs inputs = JobInputs.resumed(replay.inputs(), stagingDir, completed);
+        journals.put(job.getId(), JobJournal.resume(file, replay, objectMapper));
+        List<Path> directories = List.of();
+        if (!replay.sealed() && request instanceof LocalExportRequest local) {
+            directories = local.getPaths().stream()
+                    .map(Path::of)
+                    .filter(Files::isDirectory)
+                    .toList();
+        }
+        if (directories.isEmpty()) {
+            inputs.seal();
+        }
+        log.info("Resuming export job {} with {} of {} file(s) done", job.getId(), completed.cardinality(),
+                inputs.size());
+        startJob(job, inputs, request, outputDir);
+        if (!directories.isEmpty()) {
+            Set<Path> known = replay.inputs().stream().map(SourceFile::path).collect(Collectors.toSet());
+            scanDirectories(job, inputs, (LocalExportRequest) request, directories, outputDir, known);
+        }
+    }
+
+    /**
+     * Hit and miss counters of the watermark caches and the render cache shared by all jobs.
+     */
+    public Map<String, WeightedLruCache.Stats> cacheStats() {
+        Map<String, WeightedLruCache.Stats> stats = new LinkedHashMap<>();
+        stats.put("textSprites", textSprites.stats());
+        stats.put("watermarkImages", watermarkImages.stats());
+        if (renderCache != null) {
+            stats.put("renders", renderCache.stats());
+        }
+        return stats;
     }
 
     public ExportJob submitExport(List<MultipartFile> files, ExportRequest request) {
         if (files == null || files.isEmpty()) {
             throw new IllegalArgumentException("At least one image must be uploaded");
         }
+        JobSetup setup = createJob(request, null, JobJournal.Kind.UPLOAD);
+        ExportJob job = setup.job();
+
+        // Move the uploads out of the servlet container's temp storage, which is released with the request.
+        Path stagingDir = storageProperties.resolve(STAGING_DIR, job.getId());
+        ensureDirectory(stagingDir);
+        List<SourceFile> sources = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            Path target = stagingDir.resolve(stagedFileName(sources.size()));
+            String originalName = FilenameUtils.getName(file.getOriginalFilename());
+            try {
+                file.transferTo(target);
+            } catch (IOException ex) {
+                jobs.remove(job.getId());
+                discardJournal(job.getId());
+                FileSystemUtils.deleteRecursively(stagingDir.toFile());
+                throw new IllegalStateException("Failed to stage uploaded file: " + originalName, ex);
+            }
+            sources.add(new SourceFile(originalName, target));
+        }
+
+        startJob(job, JobInputs.of(sources, stagingDir), request, setup.outputDir());
+        return job;
+    }
+
+    /**
+     * Creates a job whose files are still being uploaded. Each file is exported as soon as it has been received,
+     * so the first outputs appear while later files are still streaming in.
+     */
+    public ExportIngest beginStreamingExport(ExportRequest request, String requestedJobId) {
+        JobSetup setup = createJob(request, requestedJobId, JobJournal.Kind.STREAM);
+        ExportJob job = setup.job();
+        Path stagingDir = storageProperties.resolve(STAGING_DIR, job.getId());
+        ensureDirectory(stagingDir);
+
+        JobInputs inputs = new JobInputs(stagingDir);
+        startJob(job, inputs, request, setup.outputDir());
+        return new StreamingIngest(job, inputs);
+    }
+
+    /**
+     * Exports files straight from local disk. Directories are walked in parallel and every file found is queued
+     * right away, so nothing is copied through an upload and there is no request size limit.
+     */
+    public ExportJob submitLocalExport(LocalExportRequest request) {
+        if (request.getPaths() == null || request.getPaths().isEmpty()) {
+            throw new IllegalArgumentException("At least one file or directory must be provided");
+        }
+        List<Path> files = new ArrayList<>();
+        List<Path> directories = new ArrayList<>();
+        for (String value : request.getPaths()) {
+            Path path = StringUtils.hasText(value) ? Path.of(value.trim()) : null;
+            if (path == null || !path.isAbsolute()) {
+                throw new IllegalArgumentException("Source paths must be absolute: " + value);
+            }
+            try {
+                // Resolves links and ".." so that the scan and the output exclusion see the real locations.
+                path = path.toRealPath();
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Source path does not exist: " + path.normalize());
+            }
+            if (Files.isDirectory(path)) {
+                directories.add(path);
+            } else if (Files.isRegularFile(path)) {
+                files.add(path);
+            } else {
+                throw new IllegalArgumentException("Source path is neither a file nor a directory: " + path);
+            }
+        }
+        String outputDir = request.getExportConfig() != null ? request.getExportConfig().getOutputDir() : null;
+        if (StringUtils.hasText(outputDir) && !Path.of(outputDir.trim()).isAbsolute()) {
+            throw new IllegalArgumentException("Output directory must be absolute: " + outputDir);
+        }
+
+        JobSetup setup = createJob(request, null, JobJournal.Kind.LOCAL);
+        ExportJob job = setup.job();
+        List<SourceFile> explicit = files.stream()
+                .map(path -> new SourceFile(path.getFileName().toString(), path))
+                .toList();
+        if (directories.isEmpty()) {
+            startJob(job, JobInputs.of(explicit, null), request, setup.outputDir());
+            return job;
+        }
+
+        JobInputs inputs = new JobInputs(null);
+        explicit.forEach(inputs::add);
+        startJob(job, inputs, request, setup.outputDir());
+        scanDirectories(job, inputs, request, directories, setup.outputDir(), Set.of());
+        return job;
+    }
+
+    /**
+     * Adds the files found in {@code directories} to {@code inputs}, except those in {@code known}, and seals them.
+     */
+    private void scanDirectories(ExportJob job, JobInputs inputs, LocalExportRequest request, List<Path> directories,
+            Path outputDir, Set<Path> known) {
+        directoryScanner.scan(directories, Boolean.TRUE.equals(request.getRecursive()), request.getIncludes(),
+                Set.of(outputDir), job::isCancelRequested,
+                path -> {
+                    if (!known.contains(path)) {
+                        inputs.add(new SourceFile(path.getFileName().toString(), path));
+                    }
+                },
+                inputs::seal);
+    }
+
+    private JobSetup createJob(ExportRequest request, String requestedJobId, JobJournal.Kind kind) {
         ExportConfig exportConfig = Optional.ofNullable(request.getExportConfig())
                 .orElseThrow(() -> new IllegalArgumentException("Export configuration must be provided"));
 
-        Path outputDir = resolveOutputDirectory(exportConfig.getOutputDir());
+        String jobId = UUID.randomUUID().toString();
+        if (StringUtils.hasText(requestedJobId)) {
+            jobId = UUID.fromString(requestedJobId.trim()).toString();
+        }
+
+        boolean incremental = Boolean.TRUE.equals(exportConfig.getIncremental());
+        Path outputDir;
+        if (incremental) {
+            if (!StringUtils.hasText(exportConfig.getOutputDir())) {
+                throw new IllegalArgumentException("Incremental export requires an output directory");
+            }
+            // Successive runs have to find the outputs and manifest of the previous one.
+            outputDir = Path.of(exportConfig.getOutputDir()).toAbsolutePath().normalize();
+        } else {
+            outputDir = resolveOutputDirectory(exportConfig.getOutputDir());
+        }
         ensureDirectory(outputDir);
 
-        String jobId = UUID.randomUUID().toString();
+        JobSetup setup = registerJob(request, jobId, outputDir);
+        if (journalSyncer != null) {
+            try {
+                journals.put(jobId, JobJournal.create(storageProperties.resolve(JOURNAL_DIR), jobId, kind, request,
+                        outputDir, objectMapper));
+            } catch (IOException ex) {
+                // The job still runs, it just cannot be resumed.
+                log.warn("Failed to create journal for export job {}: {}", jobId, ex.getMessage());
+            }
+        }
+        return setup;
+    }
+
+    /**
+     * Makes the job known under {@code jobId} and sets up the per-job state its configuration asks for.
+     */
+    private JobSetup registerJob(ExportRequest request, String jobId, Path outputDir) {
+        ExportConfig exportConfig = request.getExportConfig();
+        boolean incremental = Boolean.TRUE.equals(exportConfig.getIncremental());
         ExportJob job = new ExportJob(jobId);
         job.setOutputDirectory(outputDir.toString());
-        job.setTotalFiles(files.size());
-        jobs.put(jobId, job);
+        if (incremental && incrementalDirectories.putIfAbsent(outputDir, jobId) != null) {
+            throw new IllegalArgumentException("An incremental export into " + outputDir + " is already running");
+        }
+        if (jobs.putIfAbsent(job) != null) {
+            incrementalDirectories.remove(outputDir, jobId);
+            throw new IllegalArgumentException("Export job already exists: " + jobId);
+        }
+        if (renderCache != null) {
+            renderConfigHashes.put(jobId, ExportManifest.configHash(request.getWatermarkConfig(), exportConfig,
+                    RenderCache.PLACEMENT_FIELDS));
+        }
+        if (incremental) {
+            try {
+                incrementalJobs.put(jobId, new IncrementalExport(ExportManifest.open(outputDir),
+                        ExportManifest.configHash(request.getWatermarkConfig(), exportConfig), outputDir));
+            } catch (IOException ex) {
+                jobs.remove(jobId);
+                renderConfigHashes.remove(jobId);
+                incrementalDirectories.remove(outputDir, jobId);
+                throw new IllegalStateException("Failed to open export manifest in " + outputDir, ex);
+            }
+        }
+        return new JobSetup(job, outputDir);
+    }
 
-        executor.submit(() -> processJob(job, files, request, outputDir));
-        return job;
+    private String stagedFileName(int index) {
+        return String.format(Locale.ROOT, "%06d.upload", index);
     }
 
     public Optional<ExportJobView> findJob(String jobId) {
         return Optional.ofNullable(jobs.get(jobId)).map(ExportJobView::from);
     }
 
-    public List<ExportJobView> listJobs() {
-        return jobs.values().stream()
-                .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
+    /**
+     * The newest {@code limit} jobs, optionally only those with {@code status}. {@code limit} is capped at
+     * {@value #MAX_LIST_LIMIT}.
+     */
+    public List<ExportJobView> listJobs(ExportJobStatus status, int limit) {
+        return jobs.list(status, Math.max(1, Math.min(limit, MAX_LIST_LIMIT))).stream()
                 .map(ExportJobView::from)
                 .toList();
     }
 
+    /**
+     * Up to {@code limit} results of a job behind the first {@code after}; {@code success} restricts them to the
+     * successful or the failed files. {@code limit} is clamped to 1..{@value #MAX_RESULT_PAGE_LIMIT}.
+     */
+    public Optional<ExportResultPage> findResults(String jobId, int after, int limit, Boolean success) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_RESULT_PAGE_LIMIT));
+        return Optional.ofNullable(jobs.get(jobId)).map(job -> job.resultsAfter(after, pageSize, success));
+    }
+
+    /**
+     * Event stream of the progress of one job; {@code results} is {@code all}, {@code failed} or {@code none}. The
+     * stream ends after the event that reports the job finished.
+     */
+    public Optional<SseEmitter> streamJob(String jobId, String results) {
+        return Optional.ofNullable(jobs.get(jobId))
+                .map(job -> progressStreams.subscribe(job, ExportProgressStreams.ResultFilter.parse(results)));
+    }
+
+    /**
+     * Event stream of the counters and status of every job that is queued, running or changes status.
+     */
+    public SseEmitter streamJobs() {
+        return progressStreams.subscribeAll();
+    }
+
     public boolean cancelJob(String jobId) {
         ExportJob job = jobs.get(jobId);
         if (job == null) {
@@ -137,64 +600,688 @@ public class ExportService {
         job.requestCancel();
         job.setStatus(ExportJobStatus.CANCELLED);
         job.setMessage("Export job cancelled");
+        JobInputs inputs = activeInputs.get(jobId);
+        if (inputs != null) {
+            inputs.seal();
+        }
+        scheduler.cancel(jobId);
         return true;
     }
 
-    private void processJob(ExportJob job, List<MultipartFile> files, ExportRequest request, Path outputDir) {
-        job.setStatus(ExportJobStatus.RUNNING);
+    private void startJob(ExportJob job, JobInputs inputs, ExportRequest request, Path outputDir) {
+        JobJournal journal = journals.get(job.getId());
+        if (journal != null) {
+            inputs.onChange(() -> journal.recordInputs(inputs));
+            journal.recordInputs(inputs);
+        }
+        activeInputs.put(job.getId(), inputs);
+        inputs.onChange(() -> job.setTotalFiles(inputs.size()));
+        job.setTotalFiles(inputs.size());
+
         WatermarkConfig watermarkConfig = request.getWatermarkConfig();
         ExportConfig exportConfig = request.getExportConfig();
 
-        for (MultipartFile file : files) {
-            if (job.isCancelRequested()) {
-                job.setStatus(ExportJobStatus.CANCELLED);
-                job.setMessage("Export cancelled after processing " + job.getProcessedFiles() + " / "
-                        + job.getTotalFiles());
-                return;
+        // Pipelined and parallel jobs share the worker pool and are scheduled alike.
+        FairExportScheduler.TaskSource tasks;
+        Runnable onDrained;
+        if (isPipelined(request)) {
+            StagedPipeline<FileWork> pipeline = openPipeline(job, inputs, watermarkConfig, exportConfig, outputDir);
+            tasks = pipeline;
+            onDrained = () -> {
+                // Left behind by a cancellation.
+                pipeline.drain(this::discardWork);
+                job.setStageQueueDepths(null);
+                finishJob(job);
+            };
+        } else if (ioExecutor != null) {
+            ReadAheadTaskSource readAhead = new ReadAheadTaskSource(job, inputs, watermarkConfig, exportConfig,
+                    outputDir);
+            tasks = readAhead;
+            onDrained = readAhead::onDrained;
+            inputs.onChange(readAhead::fill);
+            readAhead.fill();
+        } else {
+            tasks = new SequentialTaskSource(job, inputs, watermarkConfig, exportConfig, outputDir);
+            onDrained = () -> finishJob(job);
+        }
+        inputs.onChange(scheduler::signal);
+
+        String priority = StringUtils.hasText(request.getPriority())
+                ? request.getPriority().toLowerCase(Locale.ROOT)
+                : null;
+        boolean small = inputs.isSealed() && inputs.size() <= exportProperties.getSmallJobThreshold();
+        FairExportScheduler.Lane lane = "high".equals(priority) || (priority == null && small)
+                ? FairExportScheduler.Lane.HIGH
+                : FairExportScheduler.Lane.NORMAL;
+        int weight = "low".equals(priority) ? 1 : 2;
+        scheduler.register(job.getId(), lane, weight, perJobParallelism, tasks, onDrained);
+    }
+
+    private StagedPipeline<FileWork> openPipeline(ExportJob job, JobInputs inputs, WatermarkConfig watermarkConfig,
+            ExportConfig exportConfig, Path outputDir) {
+        ExportProperties.Pipeline settings = exportProperties.getPipeline();
+
+        StagedPipeline<FileWork> pipeline = new StagedPipeline<FileWork>(settings.getQueueCapacity())
+                .stage("decode", settings.getDecodeWorkers(), work -> {
+                    markRunning(job);
+                    work.skipped = skipUnchanged(job, work);
+                    if (!work.skipped && !reuseCachedRender(job, work, exportConfig, outputDir)) {
+                        decode(job, work, exportConfig);
+                    }
+                })
+                .stage("render", settings.resolveRenderWorkers(), work -> {
+                    if (!work.skipped && !work.fromCache) {
+                        render(work, watermarkConfig, exportConfig);
+                    }
+                })
+                .stage("encode", settings.resolveEncodeWorkers(), work -> {
+                    if (!work.skipped && !work.fromCache) {
+                        encode(work, exportConfig, outputDir);
+                    }
+                });
+        StagedPipeline.ItemSource<FileWork> source = new StagedPipeline.ItemSource<>() {
+            private int nextIndex;
+
+            @Override
+            public FileWork poll() {
+                nextIndex = inputs.nextPending(nextIndex);
+                if (job.isCancelRequested() || nextIndex >= inputs.size()) {
+                    return null;
+                }
+                FileWork work = newWork(job, nextIndex, inputs.get(nextIndex));
+                nextIndex++;
+                return work;
             }
 
-            String originalName = FilenameUtils.getName(file.getOriginalFilename());
-            job.setCurrentFile(originalName);
+            @Override
+            public boolean isExhausted() {
+                return job.isCancelRequested()
+                        || (inputs.isSealed() && inputs.nextPending(nextIndex) >= inputs.size());
+            }
 
-            ExportFileResult result = new ExportFileResult();
-            result.setSourceName(originalName);
+            @Override
+            public int backlog() {
+                return Math.max(0, inputs.size() - nextIndex);
+            }
+        };
+        pipeline.open(source,
+                work -> {
+                    // Skipped files have already been reported.
+                    if (!work.skipped) {
+                        completeWork(job, work);
+                    }
+                },
+                (work, ex) -> failWork(job, work, ex));
+        job.setStageQueueDepths(pipeline::queueDepths);
+        return pipeline;
+    }
 
-            try (InputStream inputStream = file.getInputStream()) {
-                BufferedImage inputImage = ImageIO.read(inputStream);
-                if (inputImage == null) {
-                    throw new IOException("Unable to read image");
+    private boolean isPipelined(ExportRequest request) {
+        String mode = StringUtils.hasText(request.getExecutionMode()) ? request.getExecutionMode()
+                : exportProperties.getMode();
+        return "pipelined".equalsIgnoreCase(mode);
+    }
+
+    private void markRunning(ExportJob job) {
+        if (!job.isCancelRequested() && job.getStatus() == ExportJobStatus.QUEUED) {
+            job.setStatus(ExportJobStatus.RUNNING);
+        }
+    }
+
+    private void decode(ExportJob job, FileWork work, ExportConfig exportConfig) throws IOException {
+        job.setCurrentFile(work.sourceName);
+        ImageInputStream imageStream = null;
+        ImageReader reader = null;
+        try {
+            imageStream = work.buffered != null
+                    ? new MemoryCacheImageInputStream(new ByteArrayInputStream(work.buffered))
+                    : ImageIO.createImageInputStream(work.input.path().toFile());
+            Iterator<ImageReader> readers = imageStream == null ? null : ImageIO.getImageReaders(imageStream);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unable to read image");
+            }
+            reader = readers.next();
+            reader.setInput(imageStream, false, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            int[] target = resolveTargetSize(width, height, exportConfig.getResize());
+            int subsampling = resolveSubsampling(width, height, target);
+            work.targetWidth = target[0];
+            work.targetHeight = target[1];
+            if (!Boolean.FALSE.equals(exportConfig.getPreserveMetadata())) {
+                work.metadata = work.buffered != null ? ImageMetadata.read(work.buffered)
+                        : ImageMetadata.read(work.input.path());
+            }
+
+            if (canTranscode(reader, width, height, target, exportConfig)) {
+                byte[] bytes = work.buffered != null ? work.buffered : Files.readAllBytes(work.input.path());
+                JpegTranscoder transcoder = JpegTranscoder.parse(bytes);
+                if (transcoder != null && transcoder.getWidth() == width && transcoder.getHeight() == height
+                        && transcoder.estimateQuality() <= resolveJpegQuality(exportConfig) + 1) {
+                    // Source and transcoded file, both compressed.
+                    work.memory = reserveBytes(2L * bytes.length, width, height);
+                    work.transcoder = transcoder;
+                    return;
                 }
+            }
+
+            if (shouldDecodeInStrips(reader, width, height, subsampling, target, exportConfig)) {
+                int decodedWidth = (width + subsampling - 1) / subsampling;
+                int stripHeight = Math.max(1, exportProperties.getStripPixels() / decodedWidth);
+                // The strip itself plus the row copies handed to the writer.
+                work.memory = reserveBytes(2L * decodedWidth * stripHeight * BYTES_PER_PIXEL, width, height);
+                work.striped = new StripedImage(reader, imageStream, subsampling, stripHeight);
+                // Owned by the striped image from now on.
+                reader = null;
+                imageStream = null;
+                return;
+            }
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (subsampling > 1) {
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            }
+            // JPEG output needs an opaque RGB raster anyway; decode straight into a pooled one when possible.
+            boolean decodeOpaque = "jpeg".equals(normalizeFormat(exportConfig.getFormat()))
+                    && canDecodeToIntRgb(reader);
+            work.memory = reserveMemory(width, height, subsampling, target, exportConfig, decodeOpaque);
+            if (decodeOpaque) {
+                param.setDestination(rasterPool.acquire((width + subsampling - 1) / subsampling,
+                        (height + subsampling - 1) / subsampling));
+                work.pooledImage = true;
+            }
+            BufferedImage inputImage = reader.read(0, param);
+            if (inputImage == null) {
+                throw new IOException("Unable to read image");
+            }
+            work.image = inputImage;
+        } finally {
+            if (reader != null) {
+                reader.dispose();
+            }
+            if (imageStream != null) {
+                imageStream.close();
+            }
+            work.buffered = null;
+        }
+    }
+
+    private boolean canDecodeToIntRgb(ImageReader reader) throws IOException {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        while (types.hasNext()) {
+            if (types.next().getBufferedImageType() == BufferedImage.TYPE_INT_RGB) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * JPEG inputs exported as JPEG at their own size keep their DCT coefficients; only the blocks the watermark
+     * paints into are re-encoded. A lower requested quality than the source's still needs a full re-encode.
+     */
+    private boolean canTranscode(ImageReader reader, int width, int height, int[] target, ExportConfig exportConfig)
+            throws IOException {
+        return exportProperties.isJpegTranscode()
+                && "jpeg".equalsIgnoreCase(reader.getFormatName())
+                && "jpeg".equals(normalizeFormat(exportConfig.getFormat()))
+                && target[0] == width && target[1] == height
+                && resolveJpegEncoding(exportConfig).allowsTranscode()
+                // A transcode keeps the chroma sampling of the source.
+                && exportConfig.getJpegChromaSubsampling() == null;
+    }
+
+    private JpegEncoding resolveJpegEncoding(ExportConfig exportConfig) {
+        return JpegEncoding.of(exportConfig.getJpegPreset(), resolveJpegQuality(exportConfig),
+                exportConfig.getJpegChromaSubsampling());
+    }
+
+    /**
+     * The parameters {@link #writeImage} uses for {@code image}, or those of a coefficient transcode.
+     */
+    private EncoderSettings describeEncoding(String format, ExportConfig exportConfig, BufferedImage image,
+            boolean transcoded) {
+        EncoderSettings settings = new EncoderSettings();
+        settings.setFormat(format);
+        if ("jpeg".equals(format)) {
+            JpegEncoding encoding = resolveJpegEncoding(exportConfig);
+            settings.setPreset(encoding.preset().name().toLowerCase(Locale.ROOT));
+            if (transcoded) {
+                // Quantization, Huffman tables and sampling come from the source file.
+                settings.setTranscoded(true);
+                return settings;
+            }
+            settings.setQuality(encoding.quality());
+            settings.setOptimizedHuffman(encoding.optimizedHuffman());
+            settings.setProgressive(encoding.progressive());
+            settings.setChromaSubsampling(encoding.chromaSubsampling());
+        } else if ("png".equals(format) && image != null && PngEncoder.supports(image)) {
+            settings.setCompressionLevel(resolvePngCompressionLevel(exportConfig));
+        }
+        return settings;
+    }
+
+    private int resolvePngCompressionLevel(ExportConfig exportConfig) {
+        return Optional.ofNullable(exportConfig.getPngCompressionLevel()).map(v -> Math.max(0, Math.min(9, v)))
+                .orElse(4);
+    }
+
+    private int resolveJpegQuality(ExportConfig exportConfig) {
+        return Optional.ofNullable(exportConfig.getJpegQuality()).map(v -> Math.max(0, Math.min(100, v))).orElse(92);
+    }
+
+    /**
+     * Very large TIFF inputs exported to PNG without further resizing are decoded strip by strip instead of as one
+     * image, so their heap use is bounded by the strip size rather than by the image size.
+     */
+    private boolean shouldDecodeInStrips(ImageReader reader, int width, int height, int subsampling, int[] target,
+            ExportConfig exportConfig) throws IOException {
+        int decodedWidth = (width + subsampling - 1) / subsampling;
+        int decodedHeight = (height + subsampling - 1) / subsampling;
+        String readerFormat = reader.getFormatName().toLowerCase(Locale.ROOT);
+        return (readerFormat.equals("tif") || readerFormat.equals("tiff"))
+                && "png".equals(normalizeFormat(exportConfig.getFormat()))
+                && (long) decodedWidth * decodedHeight >= exportProperties.getTiledPixelThreshold()
+                && target[0] == decodedWidth && target[1] == decodedHeight;
+    }
+
+    /**
+     * Largest source subsampling step that still decodes at least {@code decodeOversampling} times the target size,
+     * so downscaling exports never decode pixels the resize would throw away.
+     */
+    private int resolveSubsampling(int width, int height, int[] target) {
+        double oversampling = Math.max(1d, exportProperties.getDecodeOversampling());
+        double ratio = Math.min(width / (double) target[0], height / (double) target[1]);
+        return Math.max(1, (int) Math.floor(ratio / oversampling));
+    }
+
+    /**
+     * Reserves the estimated peak working set of one file: the decoded image, the resized copy together with the
+     * resize engine's working arrays and, for JPEG output that is not decoded into an opaque raster, the opaque RGB
+     * copy made before encoding. Dimensions come from the image header, so nothing has been decoded yet when an
+     * oversized file is rejected.
+     */
+    private MemoryBudget.Reservation reserveMemory(int width, int height, int subsampling, int[] target,
+            ExportConfig exportConfig, boolean decodeOpaque) throws IOException {
+        int decodedWidth = (width + subsampling - 1) / subsampling;
+        int decodedHeight = (height + subsampling - 1) / subsampling;
+        long decoded = (long) decodedWidth * decodedHeight * BYTES_PER_PIXEL;
+        long targetBytes = (long) target[0] * target[1] * BYTES_PER_PIXEL;
+        long required = decoded;
+        if (target[0] != decodedWidth || target[1] != decodedHeight) {
+            ResizeConfig resize = exportConfig.getResize();
+            ResizeEngine.Quality quality = ResizeEngine.Quality.parse(resize != null ? resize.getQuality() : null);
+            required += targetBytes
+                    + ResizeEngine.scratchBytes(decodedWidth, decodedHeight, target[0], target[1], quality);
+        }
+        if ("jpeg".equals(normalizeFormat(exportConfig.getFormat())) && !decodeOpaque) {
+            required += targetBytes;
+        }
+        return reserveBytes(required, width, height);
+    }
+
+    private MemoryBudget.Reservation reserveBytes(long required, int width, int height) throws IOException {
+        if (!memoryBudget.canEverFit(required)) {
+            throw new IOException(String.format(Locale.ROOT,
+                    "Image of %dx%d needs about %d MB to export, which exceeds the export memory budget of %d MB",
+                    width, height, required >> 20, memoryBudget.getCapacityBytes() >> 20));
+        }
+        try {
+            return memoryBudget.reserve(required);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for export memory", ex);
+        }
+    }
+
+    private void render(FileWork work, WatermarkConfig watermarkConfig, ExportConfig exportConfig)
+            throws IOException {
+        if (work.transcoder != null) {
+            int width = work.transcoder.getWidth();
+            int height = work.transcoder.getHeight();
+            Rectangle bounds = resolveWatermarkBounds(watermarkConfig, width, height);
+            BufferedImage overlay = null;
+            if (bounds != null) {
+                overlay = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+                applyWatermark(overlay, bounds.x, bounds.y, width, height, watermarkConfig);
+            }
+            work.encoded = work.transcoder.transcode(overlay, bounds == null ? 0 : bounds.x,
+                    bounds == null ? 0 : bounds.y);
+            work.transcoder = null;
+            if (work.metadata != null) {
+                // The transcoder already carries the source's ICC profile over with its coefficients.
+                work.encoded = JpegSegments.insert(work.encoded,
+                        work.metadata.forOutput(width, height).jpegSegments(false));
+                work.metadata = null;
+            }
+            work.encoder = describeEncoding("jpeg", exportConfig, null, true);
+            return;
+        }
+        if (work.striped != null) {
+            // Strips are watermarked lazily while the encoder pulls them.
+            int width = work.striped.getWidth();
+            int height = work.striped.getHeight();
+            work.striped.setOverlay(resolveWatermarkBounds(watermarkConfig, width, height),
+                    (strip, offsetY) -> applyWatermark(strip, 0, offsetY, width, height, watermarkConfig));
+            return;
+        }
+        boolean opaqueOutput = "jpeg".equals(normalizeFormat(exportConfig.getFormat()));
+        BufferedImage processed = applyResizeIfNeeded(work.image, work.targetWidth, work.targetHeight,
+                exportConfig.getResize(), opaqueOutput);
+        if (opaqueOutput && processed.getType() != BufferedImage.TYPE_INT_RGB) {
+            processed = flattenToPooledRaster(processed);
+        }
+        if (processed != work.image) {
+            work.releasePooledImage(rasterPool);
+            work.pooledImage = opaqueOutput;
+        }
+        applyWatermark(processed, watermarkConfig);
+        work.image = processed;
+    }
 
-                BufferedImage processed = applyResizeIfNeeded(inputImage, exportConfig.getResize());
-                applyWatermark(processed, watermarkConfig);
+    /**
+     * Copies {@code image} onto a white pooled opaque raster, which is what JPEG encoding needs.
+     */
+    private BufferedImage flattenToPooledRaster(BufferedImage image) {
+        BufferedImage opaque = rasterPool.acquire(image.getWidth(), image.getHeight());
+        Graphics2D g2d = opaque.createGraphics();
+        try {
+            if (image.getColorModel().hasAlpha()) {
+                g2d.setColor(Color.WHITE);
+                g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+            }
+            g2d.drawImage(image, 0, 0, null);
+        } finally {
+            g2d.dispose();
+        }
+        return opaque;
+    }
 
-                String format = normalizeFormat(exportConfig.getFormat());
-                Path outputFile = buildOutputPath(outputDir, originalName, format, exportConfig.getNaming());
-                writeImage(processed, format, exportConfig, outputFile);
+    private void encode(FileWork work, ExportConfig exportConfig, Path outputDir) throws IOException {
+        String format = normalizeFormat(exportConfig.getFormat());
+        reserveOutput(work, outputDir, format, exportConfig);
+        if (work.striped != null) {
+            writeStriped(work.striped, format, work.outputFile);
+            work.encoder = describeEncoding(format, exportConfig, null, false);
+            return;
+        }
+        if (work.encoded != null) {
+            Files.write(work.outputFile, work.encoded);
+            work.encoded = null;
+            return;
+        }
+        writeImage(work.image, format, exportConfig, outputMetadata(work), work.outputFile);
+        work.encoder = describeEncoding(format, exportConfig, work.image, false);
+    }
+
+    private void reserveOutput(FileWork work, Path outputDir, String format, ExportConfig exportConfig)
+            throws IOException {
+        work.outputFile = buildOutputPath(outputDir, work.sourceName, format, exportConfig.getNaming(),
+                work.previousOutput);
+        if (work.journal != null) {
+            work.journal.recordOutput(work.index, work.outputFile.getFileName().toString());
+        }
+    }
+
+    private ImageMetadata outputMetadata(FileWork work) {
+        return work.metadata == null ? null : work.metadata.forOutput(work.image.getWidth(), work.image.getHeight());
+    }
 
-                result.setOutputName(outputFile.getFileName().toString());
-                result.setSuccess(true);
-                job.incrementSuccess();
-            } catch (Exception ex) {
-                result.setSuccess(false);
-                result.setMessage(ex.getMessage());
-                job.incrementFailure();
+    private void writeStriped(StripedImage image, String format, Path outputFile) throws IOException {
+        try (ImageOutputStream ios = new FileImageOutputStream(outputFile.toFile())) {
+            if (!ImageIO.write(image, format, ios)) {
+                throw new IOException("No writer available for format: " + format);
             }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
 
-            job.addResult(result);
+    private void encodeToMemory(FileWork work, ExportConfig exportConfig) throws IOException {
+        if (work.striped != null) {
+            // Encoded straight into the output file by writeEncoded instead of buffering the whole image.
+            return;
+        }
+        if (work.encoded != null) {
+            // Already transcoded.
+            work.releaseMemory();
+            return;
+        }
+        String format = normalizeFormat(exportConfig.getFormat());
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(buffer)) {
+            writeImage(work.image, format, exportConfig, outputMetadata(work), ios);
+        }
+        work.encoder = describeEncoding(format, exportConfig, work.image, false);
+        work.releasePooledImage(rasterPool);
+        work.image = null;
+        work.releaseMemory();
+        work.encoded = buffer.toByteArray();
+    }
+
+    private void writeEncoded(FileWork work, ExportConfig exportConfig, Path outputDir) throws IOException {
+        String format = normalizeFormat(exportConfig.getFormat());
+        reserveOutput(work, outputDir, format, exportConfig);
+        if (work.striped != null) {
+            writeStriped(work.striped, format, work.outputFile);
+            work.encoder = describeEncoding(format, exportConfig, null, false);
+            return;
+        }
+        Files.write(work.outputFile, work.encoded);
+        work.encoded = null;
+    }
+
+    private void completeWork(ExportJob job, FileWork work) {
+        work.releasePooledImage(rasterPool);
+        work.image = null;
+        work.closeStriped();
+        work.metadata = null;
+        work.releaseMemory();
+        ExportFileResult result = new ExportFileResult();
+        result.setSourceName(work.sourceName);
+        result.setOutputName(work.outputFile.getFileName().toString());
+        result.setSuccess(true);
+        result.setEncoder(work.encoder);
+        if (work.fromCache) {
+            result.setCached(true);
+        } else if (work.cacheKey != null) {
+            try {
+                renderCache.store(work.cacheKey, work.outputFile);
+            } catch (IOException ex) {
+                log.warn("Failed to cache the export of {}: {}", work.sourceName, ex.getMessage());
+            }
+        }
+        IncrementalExport incremental = incrementalJobs.get(job.getId());
+        if (incremental != null && work.manifestEntry != null) {
+            ExportManifest.Entry entry = work.manifestEntry;
+            try {
+                incremental.manifest().record(new ExportManifest.Entry(entry.source(), entry.size(), entry.modified(),
+                        entry.inputHash(), entry.configHash(), result.getOutputName()));
+            } catch (IOException ex) {
+                log.warn("Failed to update export manifest for {}: {}", work.sourceName, ex.getMessage());
+            }
+        }
+        job.incrementSuccess();
+        recordResult(job, work, result);
+        job.incrementProcessed();
+    }
+
+    /**
+     * In an incremental job, reports {@code work} as skipped and returns {@code true} when the manifest shows that
+     * its output was produced from the same content with the same configuration and still exists. Otherwise notes
+     * what {@link #completeWork} has to record for it.
+     */
+    private boolean skipUnchanged(ExportJob job, FileWork work) throws IOException {
+        IncrementalExport incremental = incrementalJobs.get(job.getId());
+        if (incremental == null) {
+            return false;
+        }
+        Path path = work.input.path();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        // Uploads are staged under new names every time, so only their original name identifies them.
+        JobInputs inputs = activeInputs.get(job.getId());
+        boolean uploaded = inputs != null && inputs.getStagingDirectory() != null;
+        String source = uploaded ? work.sourceName : path.toString();
+        long modified = uploaded ? 0 : attributes.lastModifiedTime().toMillis();
+        ExportManifest.Entry previous = incremental.manifest().find(source);
+        if (previous != null && !uploaded && previous.size() == attributes.size()
+                && previous.modified() == modified) {
+            work.inputHash = previous.inputHash();
+        }
+        String inputHash = inputHash(work);
+        if (previous != null && previous.inputHash().equals(inputHash)
+                && previous.configHash().equals(incremental.configHash())
+                && Files.isRegularFile(incremental.outputDir().resolve(previous.output()))) {
+            work.buffered = null;
+            ExportFileResult result = new ExportFileResult();
+            result.setSourceName(work.sourceName);
+            result.setOutputName(previous.output());
+            result.setSuccess(true);
+            result.setSkipped(true);
+            result.setMessage("Unchanged since the last export");
+            job.incrementSkipped();
+            recordResult(job, work, result);
             job.incrementProcessed();
+            return true;
+        }
+        work.manifestEntry = new ExportManifest.Entry(source, attributes.size(), modified, inputHash,
+                incremental.configHash(), null);
+        work.previousOutput = previous != null ? previous.output() : null;
+        return false;
+    }
+
+    /**
+     * Links or copies the output of {@code work} from the render cache and returns {@code true} when an earlier job
+     * rendered the same input with the same configuration. On a miss, notes the key {@link #completeWork} stores the
+     * new output under.
+     */
+    private boolean reuseCachedRender(ExportJob job, FileWork work, ExportConfig exportConfig, Path outputDir)
+            throws IOException {
+        String configHash = renderConfigHashes.get(job.getId());
+        if (configHash == null) {
+            return false;
+        }
+        String format = normalizeFormat(exportConfig.getFormat());
+        work.cacheKey = renderCache.key(inputHash(work), configHash, format);
+        Path cached = renderCache.lookup(work.cacheKey);
+        if (cached == null) {
+            return false;
+        }
+        job.setCurrentFile(work.sourceName);
+        reserveOutput(work, outputDir, format, exportConfig);
+        if (!renderCache.materialize(cached, work.outputFile)) {
+            // Evicted since the lookup; the reserved name is taken again when the file is rendered.
+            Files.deleteIfExists(work.outputFile);
+            work.outputFile = null;
+            return false;
+        }
+        work.fromCache = true;
+        work.buffered = null;
+        return true;
+    }
+
+    private static String inputHash(FileWork work) throws IOException {
+        if (work.inputHash == null) {
+            work.inputHash = work.buffered != null ? ExportManifest.sha256(work.buffered)
+                    : ExportManifest.sha256(work.input.path());
+        }
+        return work.inputHash;
+    }
+
+    private void recordResult(ExportJob job, FileWork work, ExportFileResult result) {
+        if (work.journal != null) {
+            work.journal.recordResult(work.index, result);
         }
+        job.recordResult(work.index, result);
+    }
+
+    private FileWork newWork(ExportJob job, int index, SourceFile input) {
+        FileWork work = new FileWork(index, input);
+        work.journal = journals.get(job.getId());
+        return work;
+    }
 
+    private void failWork(ExportJob job, FileWork work, Throwable ex) {
+        discardWork(work);
+        ExportFileResult result = new ExportFileResult();
+        result.setSourceName(work.sourceName);
+        result.setSuccess(false);
+        result.setMessage(ex instanceof OutOfMemoryError ? "Not enough memory to export this image" : ex.getMessage());
+        job.incrementFailure();
+        recordResult(job, work, result);
+        job.incrementProcessed();
+    }
+
+    /**
+     * Releases what {@code work} holds without reporting a result for it.
+     */
+    private void discardWork(FileWork work) {
+        work.releasePooledImage(rasterPool);
+        work.image = null;
+        work.transcoder = null;
+        work.closeStriped();
+        work.buffered = null;
+        work.encoded = null;
+        work.metadata = null;
+        work.releaseMemory();
+        deleteQuietly(work.outputFile);
+    }
+
+    private void finishJob(ExportJob job) {
         job.setCurrentFile(null);
+        job.flushPendingResults();
+        JobInputs inputs = activeInputs.remove(job.getId());
+        if (inputs != null && inputs.getStagingDirectory() != null) {
+            FileSystemUtils.deleteRecursively(inputs.getStagingDirectory().toFile());
+        }
+        renderConfigHashes.remove(job.getId());
+        discardJournal(job.getId());
+        IncrementalExport incremental = incrementalJobs.remove(job.getId());
+        if (incremental != null) {
+            try {
+                incremental.manifest().close();
+            } catch (IOException ex) {
+                log.warn("Failed to compact export manifest in {}: {}", incremental.outputDir(), ex.getMessage());
+            }
+            incrementalDirectories.remove(incremental.outputDir(), job.getId());
+        }
+        if (job.isCancelRequested()) {
+            job.setStatus(ExportJobStatus.CANCELLED);
+            job.setMessage("Export cancelled after processing " + job.getProcessedFiles() + " / "
+                    + job.getTotalFiles());
+            return;
+        }
+        if (job.getTotalFiles() == 0) {
+            job.setStatus(ExportJobStatus.FAILED);
+            // Only uploads are staged; local exports read their sources where they are.
+            boolean local = inputs != null && inputs.getStagingDirectory() == null;
+            job.setMessage(local ? "No images found in the selected folders" : "No images were uploaded");
+            return;
+        }
         if (job.getFailureCount() > 0) {
             job.setStatus(ExportJobStatus.COMPLETED);
             job.setMessage("Completed with " + job.getFailureCount() + " failed file(s)");
+        } else if (job.getSkippedCount() > 0) {
+            job.setStatus(ExportJobStatus.COMPLETED);
+            job.setMessage("Exported " + job.getSuccessCount() + " file(s), skipped " + job.getSkippedCount()
+                    + " unchanged");
         } else {
             job.setStatus(ExportJobStatus.COMPLETED);
             job.setMessage("All files exported successfully");
         }
     }
 
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // best effort clean-up of a partially written output
+        }
+    }
+
     private Path resolveOutputDirectory(String configuredPath) {
         String timestamp = Instant.now().toString().replace(':', '-');
         if (!StringUtils.hasText(configuredPath)) {
@@ -220,13 +1307,25 @@ public class ExportService {
         return value.equals("jpg") ? "jpeg" : value;
     }
 
-    private BufferedImage applyResizeIfNeeded(BufferedImage source, ResizeConfig resize) {
-        if (resize == null || !StringUtils.hasText(resize.getMode())) {
+    private BufferedImage applyResizeIfNeeded(BufferedImage source, int targetWidth, int targetHeight,
+            ResizeConfig resize, boolean opaqueOutput) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (targetWidth == width && targetHeight == height) {
             return source;
         }
+        ResizeEngine.Quality quality = ResizeEngine.Quality.parse(resize != null ? resize.getQuality() : null);
+        if (opaqueOutput && !source.getColorModel().hasAlpha()) {
+            return resizeEngine.resize(source, rasterPool.acquire(targetWidth, targetHeight), quality);
+        }
+        return resizeEngine.resize(source, targetWidth, targetHeight, quality);
+    }
+
+    private int[] resolveTargetSize(int width, int height, ResizeConfig resize) {
+        if (resize == null || !StringUtils.hasText(resize.getMode())) {
+            return new int[] { width, height };
+        }
         String mode = resize.getMode().toLowerCase(Locale.ROOT);
-        int width = source.getWidth();
-        int height = source.getHeight();
         int targetWidth = width;
         int targetHeight = height;
 
@@ -254,171 +1353,257 @@ public class ExportService {
             }
         }
 
-        targetWidth = Math.max(1, targetWidth);
-        targetHeight = Math.max(1, targetHeight);
-        if (targetWidth == width && targetHeight == height) {
-            return source;
-        }
-
-        BufferedImage output = new BufferedImage(targetWidth, targetHeight,
-                source.getTransparency() == BufferedImage.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = output.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-        g2d.drawImage(source, 0, 0, targetWidth, targetHeight, null);
-        g2d.dispose();
-        return output;
+        return new int[] { Math.max(1, targetWidth), Math.max(1, targetHeight) };
     }
 
 private void applyWatermark(BufferedImage image, WatermarkConfig config) {
+        applyWatermark(image, 0, 0, image.getWidth(), image.getHeight(), config);
+    }
+
+    /**
+     * Draws the watermark of a {@code canvasWidth} x {@code canvasHeight} image onto {@code image}, which holds the
+     * part of that image starting at ({@code regionX}, {@code regionY}).
+     */
+    private void applyWatermark(BufferedImage image, int regionX, int regionY, int canvasWidth, int canvasHeight,
+            WatermarkConfig config) {
         if (config == null || !StringUtils.hasText(config.getType())) {
             return;
         }
         if ("image".equalsIgnoreCase(config.getType())) {
-            applyImageWatermark(image, config);
+            applyImageWatermark(image, regionX, regionY, canvasWidth, canvasHeight, config);
             return;
         }
         if ("text".equalsIgnoreCase(config.getType())) {
-            applyTextWatermark(image, config);
+            applyTextWatermark(image, regionX, regionY, canvasWidth, canvasHeight, config);
         }
     }
 
-    private void applyTextWatermark(BufferedImage image, WatermarkConfig config) {
+    /**
+     * Area of a {@code width} x {@code height} image the watermark may paint, or {@code null} when it paints nothing.
+     * The bounds are conservative: they may be slightly larger than the painted pixels but never smaller.
+     */
+    private Rectangle resolveWatermarkBounds(WatermarkConfig config, int width, int height) {
+        if (config == null || !StringUtils.hasText(config.getType())) {
+            return null;
+        }
+        Rectangle bounds = null;
+        if ("image".equalsIgnoreCase(config.getType())) {
+            BufferedImage watermark = watermarkImages.getOriginal(config.getImage());
+            int[] size = watermark == null ? null : resolveWatermarkImageSize(watermark, config.getImage(), width);
+            if (size != null) {
+                double[] anchor = resolveAnchor(config.getLayout(), width, height);
+                bounds = new Rectangle((int) Math.round(anchor[0] - size[0] / 2.0),
+                        (int) Math.round(anchor[1] - size[1] / 2.0), size[0], size[1]);
+            }
+        } else if ("text".equalsIgnoreCase(config.getType())) {
+            TextSprite sprite = resolveTextSprite(config);
+            if (sprite != null) {
+                double[] anchor = resolveAnchor(config.getLayout(), width, height);
+                bounds = new Rectangle((int) Math.round(anchor[0]) - sprite.pivotX(),
+                        (int) Math.round(anchor[1]) - sprite.pivotY(), sprite.image().getWidth(),
+                        sprite.image().getHeight());
+            }
+        }
+        if (bounds == null) {
+            return null;
+        }
+        bounds = bounds.intersection(new Rectangle(0, 0, width, height));
+        return bounds.isEmpty() ? null : bounds;
+    }
+
+    private Font resolveWatermarkFont(WatermarkConfig config) {
         TextWatermarkConfig textConfig = config.getText();
-        if (textConfig == null || !StringUtils.hasText(textConfig.getContent())) {
-            return;
+        int fontStyle = Font.PLAIN;
+        if (Boolean.TRUE.equals(textConfig.getBold())) {
+            fontStyle |= Font.BOLD;
+        }
+        if (Boolean.TRUE.equals(textConfig.getItalic())) {
+            fontStyle |= Font.ITALIC;
+        }
+        int baseSize = textConfig.getFontSize() != null ? textConfig.getFontSize() : 32;
+        if (config.getLayout() != null && config.getLayout().getScale() != null) {
+            baseSize = Math.max(8, (int) Math.round(baseSize * config.getLayout().getScale()));
         }
+        return fontService.resolveFont(textConfig.getFontFamily(), fontStyle, baseSize);
+    }
+
+    private double resolveRotation(LayoutConfig layout) {
+        return layout != null && layout.getRotationDeg() != null ? Math.toRadians(layout.getRotationDeg()) : 0;
+    }
 
+    private void applyTextWatermark(BufferedImage image, int regionX, int regionY, int canvasWidth,
+            int canvasHeight, WatermarkConfig config) {
+        TextSprite sprite = resolveTextSprite(config);
+        if (sprite == null) {
+            return;
+        }
+        double[] anchor = resolveAnchor(config.getLayout(), canvasWidth, canvasHeight);
+        int drawX = (int) Math.round(anchor[0]) - sprite.pivotX() - regionX;
+        int drawY = (int) Math.round(anchor[1]) - sprite.pivotY() - regionY;
+        // The opacity is already part of the sprite.
+        if (AlphaCompositor.composite(sprite.image(), image, drawX, drawY, 1f)) {
+            return;
+        }
         Graphics2D g2d = image.createGraphics();
         try {
-            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(sprite.image(), drawX, drawY, null);
+        } finally {
+            g2d.dispose();
+        }
+    }
 
-            int fontStyle = Font.PLAIN;
-            if (Boolean.TRUE.equals(textConfig.getBold())) {
-                fontStyle |= Font.BOLD;
-            }
-            if (Boolean.TRUE.equals(textConfig.getItalic())) {
-                fontStyle |= Font.ITALIC;
-            }
-            int baseSize = textConfig.getFontSize() != null ? textConfig.getFontSize() : 32;
-            if (config.getLayout() != null && config.getLayout().getScale() != null) {
-                baseSize = Math.max(8, (int) Math.round(baseSize * config.getLayout().getScale()));
-            }
-            Font font = new Font(Optional.ofNullable(textConfig.getFontFamily()).orElse(Font.SANS_SERIF), fontStyle,
-                    baseSize);
-            g2d.setFont(font);
+    private TextSprite resolveTextSprite(WatermarkConfig config) {
+        TextWatermarkConfig textConfig = config.getText();
+        if (textConfig == null || !StringUtils.hasText(textConfig.getContent())) {
+            return null;
+        }
+        return textSprites.get(TextSpriteKey.of(config, fontService.getCustomFontGeneration()), key -> renderTextSprite(config));
+    }
+
+    /**
+     * Renders the styled and rotated text once into a premultiplied sprite whose pivot is the watermark anchor, so
+     * that every image only needs a single composite.
+     */
+    private TextSprite renderTextSprite(WatermarkConfig config) {
+        TextWatermarkConfig textConfig = config.getText();
+        String content = textConfig.getContent();
+        Font font = resolveWatermarkFont(config);
+
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D measure = scratch.createGraphics();
+        FontMetrics metrics;
+        FontRenderContext frc;
+        try {
+            applyTextHints(measure);
+            measure.setFont(font);
+            metrics = measure.getFontMetrics();
+            frc = measure.getFontRenderContext();
+        } finally {
+            measure.dispose();
+        }
 
-            FontMetrics metrics = g2d.getFontMetrics();
-            int textWidth = metrics.stringWidth(textConfig.getContent());
+        // Positions relative to the anchor, matching how the text has always been placed.
+        int textWidth = metrics.stringWidth(content);
+        float drawX = (float) (-textWidth / 2.0);
+        float drawY = (float) (metrics.getAscent() / 2.0);
+        Shape outline = font.createGlyphVector(frc, content).getOutline(drawX, drawY);
+        Rectangle2D box = new Rectangle2D.Double(drawX, drawY - metrics.getAscent(), textWidth,
+                metrics.getAscent() + metrics.getDescent());
+        box.add(outline.getBounds2D());
 
-            double[] anchor = resolveAnchor(config.getLayout(), image.getWidth(), image.getHeight());
-            double anchorX = anchor[0];
-            double anchorY = anchor[1];
+        ShadowStyle shadow = textConfig.getShadow();
+        double shadowX = 0;
+        double shadowY = 0;
+        if (shadow != null) {
+            shadowX = Optional.ofNullable(shadow.getOffsetX()).orElse(2.0);
+            shadowY = Optional.ofNullable(shadow.getOffsetY()).orElse(2.0);
+        }
+        StrokeStyle stroke = textConfig.getStroke();
+        BasicStroke basicStroke = null;
+        if (stroke != null && stroke.getWidth() != null && stroke.getWidth() > 0) {
+            basicStroke = new BasicStroke(stroke.getWidth().floatValue());
+            box.add(basicStroke.createStrokedShape(outline).getBounds2D());
+        }
+        if (shadow != null) {
+            box.add(new Rectangle2D.Double(box.getX() + shadowX, box.getY() + shadowY, box.getWidth(),
+                    box.getHeight()));
+        }
 
-            float drawX = (float) (anchorX - textWidth / 2.0);
-            float drawY = (float) (anchorY + metrics.getAscent() / 2.0);
+        double rotation = resolveRotation(config.getLayout());
+        Rectangle2D extent = rotation == 0 ? box
+                : AffineTransform.getRotateInstance(rotation).createTransformedShape(box).getBounds2D();
+        int minX = (int) Math.floor(extent.getMinX()) - 2;
+        int minY = (int) Math.floor(extent.getMinY()) - 2;
+        int width = (int) Math.ceil(extent.getMaxX()) + 2 - minX;
+        int height = (int) Math.ceil(extent.getMaxY()) + 2 - minY;
 
-            AffineTransform backup = g2d.getTransform();
-            double rotation = config.getLayout() != null && config.getLayout().getRotationDeg() != null
-                    ? Math.toRadians(config.getLayout().getRotationDeg())
-                    : 0;
+        BufferedImage sprite = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = sprite.createGraphics();
+        try {
+            applyTextHints(g2d);
+            g2d.setFont(font);
+            g2d.translate(-minX, -minY);
             if (rotation != 0) {
-                g2d.rotate(rotation, anchorX, anchorY);
+                g2d.rotate(rotation);
             }
 
             float opacity = Optional.ofNullable(textConfig.getOpacity()).map(v -> v.floatValue() / 100f).orElse(0.8f);
             opacity = Math.max(0f, Math.min(1f, opacity));
             g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
 
-            ShadowStyle shadow = textConfig.getShadow();
             if (shadow != null) {
-                Color shadowColor = ColorUtils.parseColor(shadow.getColor(), new Color(0f, 0f, 0f, 0.4f));
-                double offsetX = Optional.ofNullable(shadow.getOffsetX()).orElse(2.0);
-                double offsetY = Optional.ofNullable(shadow.getOffsetY()).orElse(2.0);
-                g2d.setColor(shadowColor);
-                g2d.drawString(textConfig.getContent(), drawX + (float) offsetX, drawY + (float) offsetY);
+                g2d.setColor(ColorUtils.parseColor(shadow.getColor(), new Color(0f, 0f, 0f, 0.4f)));
+                g2d.drawString(content, drawX + (float) shadowX, drawY + (float) shadowY);
             }
-
-            StrokeStyle stroke = textConfig.getStroke();
-            if (stroke != null && stroke.getWidth() != null && stroke.getWidth() > 0) {
-                Color strokeColor = ColorUtils.parseColor(stroke.getColor(), Color.BLACK);
-                g2d.setColor(strokeColor);
-                GlyphVector glyphVector = font.createGlyphVector(g2d.getFontRenderContext(), textConfig.getContent());
-                Shape shape = glyphVector.getOutline(drawX, drawY);
-                g2d.setStroke(new BasicStroke(stroke.getWidth().floatValue()));
-                g2d.draw(shape);
+            if (basicStroke != null) {
+                g2d.setColor(ColorUtils.parseColor(stroke.getColor(), Color.BLACK));
+                g2d.setStroke(basicStroke);
+                g2d.draw(outline);
             }
-
-            Color fill = ColorUtils.parseColor(textConfig.getColor(), Color.WHITE);
-            g2d.setColor(fill);
-            g2d.drawString(textConfig.getContent(), drawX, drawY);
-
-            g2d.setTransform(backup);
+            g2d.setColor(ColorUtils.parseColor(textConfig.getColor(), Color.WHITE));
+            g2d.drawString(content, drawX, drawY);
         } finally {
             g2d.dispose();
         }
+        return new TextSprite(sprite, -minX, -minY);
     }
 
-    private void applyImageWatermark(BufferedImage image, WatermarkConfig config) {
-        ImageWatermarkConfig imageConfig = config.getImage();
-        if (imageConfig == null || !StringUtils.hasText(imageConfig.getData())) {
-            return;
-        }
-
-        String data = imageConfig.getData();
-        String base64 = data;
-        int commaIndex = data.indexOf(',');
-        if (commaIndex >= 0) {
-            base64 = data.substring(commaIndex + 1);
-        }
-
-        byte[] bytes;
-        try {
-            bytes = Base64.getDecoder().decode(base64);
-        } catch (IllegalArgumentException ex) {
-            return;
-        }
-
-        BufferedImage watermark;
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes)) {
-            watermark = ImageIO.read(bais);
-        } catch (IOException ex) {
-            return;
-        }
+    private static void applyTextHints(Graphics2D g2d) {
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+    }
 
+    private void applyImageWatermark(BufferedImage image, int regionX, int regionY, int canvasWidth,
+            int canvasHeight, WatermarkConfig config) {
+        ImageWatermarkConfig imageConfig = config.getImage();
+        BufferedImage watermark = watermarkImages.getOriginal(imageConfig);
         if (watermark == null) {
             return;
         }
-
-        double scale = Optional.ofNullable(imageConfig.getScale()).orElse(0.3);
-        scale = Math.max(0.05, Math.min(1.0, scale));
-        int targetWidth = (int) Math.round(image.getWidth() * scale);
-        if (targetWidth <= 0) {
-            return;
-        }
-        double ratio = targetWidth / (double) watermark.getWidth();
-        int targetHeight = (int) Math.round(watermark.getHeight() * ratio);
-        if (targetHeight <= 0) {
+        int[] size = resolveWatermarkImageSize(watermark, imageConfig, canvasWidth);
+        if (size == null) {
             return;
         }
+        int targetWidth = size[0];
+        int targetHeight = size[1];
+        BufferedImage scaled = watermarkImages.getScaled(imageConfig, targetWidth, targetHeight);
 
-        double[] anchor = resolveAnchor(config.getLayout(), image.getWidth(), image.getHeight());
+        double[] anchor = resolveAnchor(config.getLayout(), canvasWidth, canvasHeight);
         double anchorX = anchor[0];
         double anchorY = anchor[1];
         int drawX = (int) Math.round(anchorX - targetWidth / 2.0);
         int drawY = (int) Math.round(anchorY - targetHeight / 2.0);
 
+        float opacity = Optional.ofNullable(imageConfig.getOpacity()).map(v -> v.floatValue() / 100f).orElse(0.8f);
+        opacity = Math.max(0f, Math.min(1f, opacity));
+        if (AlphaCompositor.composite(scaled, image, drawX - regionX, drawY - regionY, opacity)) {
+            return;
+        }
         Graphics2D g2d = image.createGraphics();
         try {
-            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-            float opacity = Optional.ofNullable(imageConfig.getOpacity()).map(v -> v.floatValue() / 100f).orElse(0.8f);
-            opacity = Math.max(0f, Math.min(1f, opacity));
+            g2d.translate(-regionX, -regionY);
             g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
-            g2d.drawImage(watermark, drawX, drawY, targetWidth, targetHeight, null);
+            g2d.drawImage(scaled, drawX, drawY, null);
         } finally {
             g2d.dispose();
         }
     }
+
+    private int[] resolveWatermarkImageSize(BufferedImage watermark, ImageWatermarkConfig imageConfig,
+            int canvasWidth) {
+        double scale = Optional.ofNullable(imageConfig.getScale()).orElse(0.3);
+        scale = Math.max(0.05, Math.min(1.0, scale));
+        int targetWidth = (int) Math.round(canvasWidth * scale);
+        if (targetWidth <= 0) {
+            return null;
+        }
+        double ratio = targetWidth / (double) watermark.getWidth();
+        int targetHeight = (int) Math.round(watermark.getHeight() * ratio);
+        if (targetHeight <= 0) {
+            return null;
+        }
+        return new int[] { targetWidth, targetHeight };
+    }
     private double[] resolveAnchor(LayoutConfig layout, int width, int height) {
         double relativeX = 0.5;
         double relativeY = 0.85;
@@ -445,8 +1630,12 @@ private void applyWatermark(BufferedImage image, WatermarkConfig config) {
         return Math.min(max, Math.max(min, value));
     }
 
-    private Path buildOutputPath(Path outputDir, String originalName, String format, NamingRule namingRule)
-            throws IOException {
+    /**
+     * Reserves the output file. {@code previousOutput} is the name an earlier incremental run wrote for the same input;
+     * that file is replaced rather than kept next to the new one.
+     */
+    private Path buildOutputPath(Path outputDir, String originalName, String format, NamingRule namingRule,
+            String previousOutput) throws IOException {
         String baseName = FilenameUtils.getBaseName(originalName);
         String extension = format.equals("jpeg") ? "jpg" : format;
 
@@ -461,49 +1650,399 @@ private void applyWatermark(BufferedImage image, WatermarkConfig config) {
 
         String candidate = builder.toString();
         Path target = outputDir.resolve(candidate + "." + extension);
+        if (target.getFileName().toString().equals(previousOutput)) {
+            Files.deleteIfExists(target);
+        }
         int index = 1;
-        while (Files.exists(target)) {
+        while (!reserve(target)) {
             target = outputDir.resolve(candidate + "-" + index + "." + extension);
             index++;
         }
         return target;
     }
 
-    private void writeImage(BufferedImage image, String format, ExportConfig exportConfig, Path outputFile)
-            throws IOException {
+    private boolean reserve(Path target) throws IOException {
+        // Files of one job are exported concurrently, so the name has to be claimed atomically.
+        try {
+            Files.createFile(target);
+            return true;
+        } catch (FileAlreadyExistsException ex) {
+            return false;
+        }
+    }
+
+    private void writeImage(BufferedImage image, String format, ExportConfig exportConfig, ImageMetadata metadata,
+            Path outputFile) throws IOException {
+        // The output file has just been reserved and is empty, so it does not need truncating.
+        try (ImageOutputStream ios = new FileImageOutputStream(outputFile.toFile())) {
+            writeImage(image, format, exportConfig, metadata, ios);
+        }
+    }
+
+    /**
+     * {@code metadata}, when not {@code null}, is copied into JPEG files and into PNG files written by
+     * {@link PngEncoder}.
+     */
+    private void writeImage(BufferedImage image, String format, ExportConfig exportConfig, ImageMetadata metadata,
+            ImageOutputStream ios) throws IOException {
         if ("jpeg".equals(format)) {
-            BufferedImage rgbImage = new BufferedImage(image.getWidth(), image.getHeight(),
-                    BufferedImage.TYPE_INT_RGB);
-            Graphics2D g2d = rgbImage.createGraphics();
-            g2d.setColor(Color.WHITE);
-            g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
-            g2d.drawImage(image, 0, 0, null);
-            g2d.dispose();
+            BufferedImage rgbImage = image;
+            if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+                rgbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+                Graphics2D g2d = rgbImage.createGraphics();
+                g2d.setColor(Color.WHITE);
+                g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+                g2d.drawImage(image, 0, 0, null);
+                g2d.dispose();
+            }
+
+            resolveJpegEncoding(exportConfig).write(rgbImage, ios,
+                    metadata == null ? List.of() : metadata.jpegSegments(metadata.isIccPreservedByDecoder()));
+        } else if ("png".equals(format) && PngEncoder.supports(image)) {
+            pngEncoder.write(image, ios, resolvePngCompressionLevel(exportConfig),
+                    metadata == null ? List.of() : metadata.pngChunks(metadata.isIccPreservedByDecoder()));
+        } else if (!ImageIO.write(image, format, ios)) {
+            throw new IOException("No writer available for format: " + format);
+        }
+    }
+
+    /**
+     * Hands out the files of a job in order; every task reads, renders and writes one file on a worker thread.
+     */
+    private final class SequentialTaskSource implements FairExportScheduler.TaskSource {
+
+        private final ExportJob job;
+        private final JobInputs inputs;
+        private final WatermarkConfig watermarkConfig;
+        private final ExportConfig exportConfig;
+        private final Path outputDir;
+        private int nextIndex;
 
-            float quality = Optional.ofNullable(exportConfig.getJpegQuality())
-                    .map(v -> Math.max(0, Math.min(100, v)) / 100f)
-                    .orElse(0.92f);
-
-            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
-            if (writers.hasNext()) {
-                ImageWriter writer = writers.next();
-                ImageWriteParam param = writer.getDefaultWriteParam();
-                if (param.canWriteCompressed()) {
-                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-                    param.setCompressionQuality(quality);
+        private SequentialTaskSource(ExportJob job, JobInputs inputs, WatermarkConfig watermarkConfig,
+                ExportConfig exportConfig, Path outputDir) {
+            this.job = job;
+            this.inputs = inputs;
+            this.watermarkConfig = watermarkConfig;
+            this.exportConfig = exportConfig;
+            this.outputDir = outputDir;
+        }
+
+        @Override
+        public Runnable poll() {
+            nextIndex = inputs.nextPending(nextIndex);
+            if (job.isCancelRequested() || nextIndex >= inputs.size()) {
+                return null;
+            }
+            FileWork work = newWork(job, nextIndex, inputs.get(nextIndex));
+            nextIndex++;
+            return () -> {
+                markRunning(job);
+                try {
+                    if (skipUnchanged(job, work)) {
+                        return;
+                    }
+                    if (reuseCachedRender(job, work, exportConfig, outputDir)) {
+                        completeWork(job, work);
+                        return;
+                    }
+                    decode(job, work, exportConfig);
+                    render(work, watermarkConfig, exportConfig);
+                    encode(work, exportConfig, outputDir);
+                    completeWork(job, work);
+                } catch (Exception | OutOfMemoryError ex) {
+                    failWork(job, work, ex);
+                }
+            };
+        }
+
+        @Override
+        public boolean isExhausted() {
+            return job.isCancelRequested() || (inputs.isSealed() && inputs.nextPending(nextIndex) >= inputs.size());
+        }
+    }
+
+    /**
+     * Keeps the blocking I/O of a job off the worker pool. Uploads are read ahead on virtual threads, a worker task
+     * only decodes, renders and encodes into memory, and the output is written on a virtual thread again. The
+     * number of files held in memory per job is bounded by the read-ahead depth.
+     */
+    private final class ReadAheadTaskSource implements FairExportScheduler.TaskSource {
+
+        private final ExportJob job;
+        private final JobInputs inputs;
+        private final WatermarkConfig watermarkConfig;
+        private final ExportConfig exportConfig;
+        private final Path outputDir;
+        private final int depth;
+        private final Queue<FileWork> ready = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger reading = new AtomicInteger();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger writing = new AtomicInteger();
+        private final AtomicBoolean drained = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private int nextIndex;
+
+        private ReadAheadTaskSource(ExportJob job, JobInputs inputs, WatermarkConfig watermarkConfig,
+                ExportConfig exportConfig, Path outputDir) {
+            this.job = job;
+            this.inputs = inputs;
+            this.watermarkConfig = watermarkConfig;
+            this.exportConfig = exportConfig;
+            this.outputDir = outputDir;
+            this.depth = perJobParallelism * 2;
+        }
+
+        @Override
+        public Runnable poll() {
+            if (job.isCancelRequested()) {
+                return null;
+            }
+            FileWork work = ready.poll();
+            fill();
+            if (work == null) {
+                return null;
+            }
+            return () -> process(work);
+        }
+
+        @Override
+        public boolean isExhausted() {
+            synchronized (this) {
+                boolean noMoreReads = job.isCancelRequested()
+                        || (inputs.isSealed() && inputs.nextPending(nextIndex) >= inputs.size());
+                return noMoreReads && reading.get() == 0 && (ready.isEmpty() || job.isCancelRequested());
+            }
+        }
+
+        private void fill() {
+            while (true) {
+                FileWork work;
+                synchronized (this) {
+                    nextIndex = inputs.nextPending(nextIndex);
+                    if (job.isCancelRequested() || nextIndex >= inputs.size() || outstanding.get() >= depth) {
+                        return;
+                    }
+                    work = newWork(job, nextIndex, inputs.get(nextIndex));
+                    nextIndex++;
+                    outstanding.incrementAndGet();
+                    reading.incrementAndGet();
                 }
-                try (ImageOutputStream ios = ImageIO.createImageOutputStream(Files.newOutputStream(outputFile,
-                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
-                    writer.setOutput(ios);
-                    writer.write(null, new IIOImage(rgbImage, null, null), param);
-                } finally {
-                    writer.dispose();
+                ioExecutor.execute(() -> read(work));
+            }
+        }
+
+        private void read(FileWork work) {
+            try {
+                if (skipUnchanged(job, work)) {
+                    outstanding.decrementAndGet();
+                } else {
+                    work.buffered = Files.readAllBytes(work.input.path());
+                    if (reuseCachedRender(job, work, exportConfig, outputDir)) {
+                        completeWork(job, work);
+                        outstanding.decrementAndGet();
+                    } else {
+                        ready.add(work);
+                    }
                 }
-            } else {
-                ImageIO.write(rgbImage, "jpeg", outputFile.toFile());
+            } catch (Exception | OutOfMemoryError ex) {
+                failWork(job, work, ex);
+                outstanding.decrementAndGet();
+            } finally {
+                reading.decrementAndGet();
+            }
+            fill();
+            scheduler.signal();
+        }
+
+        private void process(FileWork work) {
+            markRunning(job);
+            try {
+                decode(job, work, exportConfig);
+                render(work, watermarkConfig, exportConfig);
+                encodeToMemory(work, exportConfig);
+            } catch (Exception | OutOfMemoryError ex) {
+                failWork(job, work, ex);
+                outstanding.decrementAndGet();
+                fill();
+                return;
+            }
+            writing.incrementAndGet();
+            ioExecutor.execute(() -> write(work));
+        }
+
+        private void write(FileWork work) {
+            try {
+                writeEncoded(work, exportConfig, outputDir);
+                completeWork(job, work);
+            } catch (Exception | OutOfMemoryError ex) {
+                failWork(job, work, ex);
+            } finally {
+                outstanding.decrementAndGet();
+                writing.decrementAndGet();
+            }
+            fill();
+            scheduler.signal();
+            finishIfDone();
+        }
+
+        private void onDrained() {
+            drained.set(true);
+            finishIfDone();
+        }
+
+        private void finishIfDone() {
+            if (drained.get() && writing.get() == 0 && finished.compareAndSet(false, true)) {
+                finishJob(job);
+            }
+        }
+    }
+
+    private void discardJournal(String jobId) {
+        JobJournal journal = journals.remove(jobId);
+        if (journal != null) {
+            try {
+                journal.discard();
+            } catch (IOException ex) {
+                log.warn("Failed to delete journal of export job {}: {}", jobId, ex.getMessage());
+            }
+        }
+    }
+
+    private record JobSetup(ExportJob job, Path outputDir) {
+    }
+
+    private record IncrementalExport(ExportManifest manifest, String configHash, Path outputDir) {
+    }
+
+    private record TextSprite(BufferedImage image, int pivotX, int pivotY) {
+
+        long sizeInBytes() {
+            return (long) image.getWidth() * image.getHeight() * BYTES_PER_PIXEL;
+        }
+    }
+
+    /**
+     * Everything that affects how a text watermark looks, independent of where it is placed.
+     */
+    private record TextSpriteKey(String content, String fontFamily, Integer fontSize, Boolean bold, Boolean italic,
+            String color, Double opacity, String strokeColor, Double strokeWidth, String shadowColor,
+            Double shadowOffsetX, Double shadowOffsetY, Double scale, Double rotationDeg, long fontGeneration) {
+
+        static TextSpriteKey of(WatermarkConfig config, long fontGeneration) {
+            TextWatermarkConfig text = config.getText();
+            StrokeStyle stroke = text.getStroke();
+            ShadowStyle shadow = text.getShadow();
+            LayoutConfig layout = config.getLayout();
+            return new TextSpriteKey(text.getContent(), text.getFontFamily(), text.getFontSize(), text.getBold(),
+                    text.getItalic(), text.getColor(), text.getOpacity(),
+                    stroke != null ? stroke.getColor() : null, stroke != null ? stroke.getWidth() : null,
+                    shadow != null ? shadow.getColor() : null, shadow != null ? shadow.getOffsetX() : null,
+                    shadow != null ? shadow.getOffsetY() : null,
+                    layout != null ? layout.getScale() : null, layout != null ? layout.getRotationDeg() : null,
+                    fontGeneration);
+        }
+    }
+
+    private final class StreamingIngest implements ExportIngest {
+
+        private final ExportJob job;
+        private final JobInputs inputs;
+        private final AtomicInteger received = new AtomicInteger();
+
+        private StreamingIngest(ExportJob job, JobInputs inputs) {
+            this.job = job;
+            this.inputs = inputs;
+        }
+
+        @Override
+        public ExportJob getJob() {
+            return job;
+        }
+
+        @Override
+        public void addFile(String originalName, InputStream content) throws IOException {
+            if (job.isCancelRequested() || inputs.isSealed()) {
+                content.transferTo(OutputStream.nullOutputStream());
+                return;
+            }
+            Path target = inputs.getStagingDirectory().resolve(stagedFileName(received.getAndIncrement()));
+            try {
+                Files.copy(content, target);
+            } catch (IOException ex) {
+                deleteQuietly(target);
+                throw ex;
+            }
+            if (inputs.add(new SourceFile(FilenameUtils.getName(originalName), target)) < 0) {
+                deleteQuietly(target);
+            }
+        }
+
+        @Override
+        public void complete() {
+            inputs.seal();
+        }
+
+        @Override
+        public void abort(Exception cause) {
+            log.warn("Upload for export job {} ended early after {} file(s): {}", job.getId(), inputs.size(),
+                    cause.getMessage());
+            inputs.seal();
+        }
+    }
+
+    private static final class FileWork {
+
+        private final int index;
+        private final SourceFile input;
+        private final String sourceName;
+        private byte[] buffered;
+        private BufferedImage image;
+        private byte[] encoded;
+        private Path outputFile;
+        private MemoryBudget.Reservation memory;
+        private int targetWidth;
+        private int targetHeight;
+        private StripedImage striped;
+        private JpegTranscoder transcoder;
+        private EncoderSettings encoder;
+        private ImageMetadata metadata;
+        private JobJournal journal;
+        private boolean skipped;
+        private String inputHash;
+        private String cacheKey;
+        private boolean fromCache;
+        private ExportManifest.Entry manifestEntry;
+        private String previousOutput;
+        private boolean pooledImage;
+
+        private FileWork(int index, SourceFile input) {
+            this.index = index;
+            this.input = input;
+            this.sourceName = input.name();
+        }
+
+        private void releaseMemory() {
+            if (memory != null) {
+                memory.close();
+                memory = null;
+            }
+        }
+
+        /**
+         * Returns {@link #image} to {@code pool} when it came from there. The field itself is left to the caller.
+         */
+        private void releasePooledImage(RasterPool pool) {
+            if (pooledImage) {
+                pool.release(image);
+                pooledImage = false;
+            }
+        }
+
+        private void closeStriped() {
+            if (striped != null) {
+                striped.close();
+                striped = null;
             }
-        } else {
-            ImageIO.write(image, format, outputFile.toFile());
         }
     }
-}
+}
\ No newline at end of file
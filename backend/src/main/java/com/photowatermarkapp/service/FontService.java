@@ -1,20 +1,209 @@
 package com.photowatermarkapp.service;
 
+import java.awt.Font;
+import java.awt.FontFormatException;
 import java.awt.GraphicsEnvironment;
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import com.photowatermarkapp.config.FontProperties;
+import com.photowatermarkapp.config.StorageProperties;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps the list of available font families in memory. Enumerating system fonts can take seconds on machines with
+ * many fonts, so the catalog is built in the background at startup and refreshed periodically. TTF and OTF files in
+ * the fonts directory of the storage directory are loaded once and can be used by text watermarks.
+ */
 @Service
 public class FontService {
 
+    private static final Logger log = LoggerFactory.getLogger(FontService.class);
+
+    private static final Set<String> FONT_EXTENSIONS = Set.of("ttf", "otf");
+
+    public record FontCatalog(List<String> families, String etag) {
+    }
+
+    private record CustomFont(FileTime modified, long size, Font font) {
+    }
+
+    private final StorageProperties storageProperties;
+    private final FontProperties fontProperties;
+    private final ScheduledExecutorService refresher;
+    private final CompletableFuture<FontCatalog> initialCatalog = new CompletableFuture<>();
+    private final Map<Path, CustomFont> customFiles = new HashMap<>();
+    private volatile Map<String, Font> customFamilies = Map.of();
+    private volatile long customFontGeneration;
+    private volatile FontCatalog catalog;
+
+    public FontService(StorageProperties storageProperties, FontProperties fontProperties) {
+        this.storageProperties = storageProperties;
+        this.fontProperties = fontProperties;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "font-catalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        refresher.execute(this::refresh);
+        long interval = fontProperties.getRefreshInterval() != null
+                ? fontProperties.getRefreshInterval().toMillis() : 0;
+        if (interval > 0) {
+            refresher.scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * The current catalog. Only the very first call after startup may wait for the catalog to be built.
+     */
+    public FontCatalog getCatalog() {
+        FontCatalog current = catalog;
+        return current != null ? current : initialCatalog.join();
+    }
+
     public List<String> listSystemFonts() {
-        GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
-        String[] fonts = environment.getAvailableFontFamilyNames();
-        return Arrays.stream(fonts)
-                .sorted(String::compareToIgnoreCase)
-                .collect(Collectors.toList());
+        return getCatalog().families();
+    }
+
+    /**
+     * Creates a font of {@code family}, preferring a user font file of that family over system fonts.
+     */
+    public Font resolveFont(String family, int style, int size) {
+        if (family != null) {
+            Font custom = customFamilies.get(family.toLowerCase(Locale.ROOT));
+            if (custom != null) {
+                return custom.deriveFont(style, (float) size);
+            }
+        }
+        return new Font(family != null ? family : Font.SANS_SERIF, style, size);
+    }
+
+    /**
+     * Changes whenever a user font file was added, replaced or removed, so that renderings of text can be cached.
+     */
+    public long getCustomFontGeneration() {
+        return customFontGeneration;
+    }
+
+    private synchronized void refresh() {
+        try {
+            loadCustomFonts();
+            TreeSet<String> families = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            families.addAll(List.of(GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames()));
+            for (Font font : customFamilies.values()) {
+                families.add(font.getFamily(Locale.ROOT));
+            }
+            List<String> list = List.copyOf(families);
+            FontCatalog current = catalog;
+            if (current == null || !current.families().equals(list)) {
+                catalog = new FontCatalog(list, etag(list));
+                log.debug("Font catalog rebuilt with {} families", list.size());
+            }
+            initialCatalog.complete(catalog);
+        } catch (RuntimeException ex) {
+            log.warn("Unable to build the font catalog", ex);
+            initialCatalog.complete(new FontCatalog(List.of(), etag(List.of())));
+        }
+    }
+
+    private void loadCustomFonts() {
+        Path directory = storageProperties.resolve(fontProperties.getDirectory());
+        if (!Files.isDirectory(directory)) {
+            if (!customFiles.isEmpty()) {
+                customFiles.clear();
+                customFamilies = Map.of();
+                customFontGeneration++;
+            }
+            return;
+        }
+
+        Set<Path> seen = new HashSet<>();
+        boolean changed = false;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                String extension = FilenameUtils.getExtension(entry.getFileName().toString()).toLowerCase(Locale.ROOT);
+                if (!FONT_EXTENSIONS.contains(extension) || !Files.isRegularFile(entry)) {
+                    continue;
+                }
+                seen.add(entry);
+                BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                CustomFont loaded = customFiles.get(entry);
+                if (loaded != null && loaded.modified().equals(attributes.lastModifiedTime())
+                        && loaded.size() == attributes.size()) {
+                    continue;
+                }
+                try {
+                    Font font = Font.createFont(Font.TRUETYPE_FONT, entry.toFile());
+                    GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(font);
+                    customFiles.put(entry, new CustomFont(attributes.lastModifiedTime(), attributes.size(), font));
+                } catch (FontFormatException | IOException ex) {
+                    log.warn("Unable to load font file {}", entry, ex);
+                    customFiles.remove(entry);
+                }
+                changed = true;
+            }
+        } catch (IOException ex) {
+            log.warn("Unable to list font directory {}", directory, ex);
+            return;
+        }
+        changed |= customFiles.keySet().retainAll(seen);
+        if (!changed) {
+            return;
+        }
+
+        Map<String, Font> families = new HashMap<>();
+        for (CustomFont custom : customFiles.values()) {
+            families.putIfAbsent(custom.font().getFamily(Locale.ROOT).toLowerCase(Locale.ROOT), custom.font());
+        }
+        customFamilies = Map.copyOf(families);
+        customFontGeneration++;
+    }
+
+    private static String etag(List<String> families) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String family : families) {
+                digest.update(family.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,157 @@
+package com.photowatermarkapp.service.export;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks source directories in parallel, one fork-join task per directory, and reports matching image files as they
+ * are found so that exporting can start before the walk has finished.
+ */
+public class DirectoryScanner {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectoryScanner.class);
+
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("jpg", "jpeg", "png", "bmp", "tif", "tiff");
+
+    private final ForkJoinPool pool;
+
+    public DirectoryScanner(int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Scans {@code directories} asynchronously. {@code globs} are matched against the path relative to the scanned
+     * directory when they contain a separator and against the file name otherwise; without globs every file with a
+     * common image extension matches. {@code excluded} directories are never entered. {@code onFinished} runs once
+     * the walk is done, also when it failed.
+     */
+    public void scan(List<Path> directories, boolean recursive, List<String> globs, Set<Path> excluded,
+            BooleanSupplier cancelled, Consumer<Path> onFile, Runnable onFinished) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (globs != null) {
+            for (String glob : globs) {
+                if (glob == null || glob.isBlank()) {
+                    continue;
+                }
+                String pattern = glob.trim();
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+                // "**/" should also match files directly inside the scanned directory.
+                if (pattern.startsWith("**/")) {
+                    matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(3)));
+                }
+            }
+        }
+        boolean matchRelative = globs != null && globs.stream().anyMatch(glob -> glob != null && glob.contains("/"));
+
+        pool.execute(() -> {
+            try {
+                List<DirectoryTask> tasks = new ArrayList<>();
+                for (Path directory : directories) {
+                    tasks.add(new DirectoryTask(directory, directory, recursive, matchers, matchRelative, excluded,
+                            cancelled, onFile));
+                }
+                ForkJoinTask.invokeAll(tasks);
+            } catch (RuntimeException ex) {
+                log.warn("Scanning source directories failed", ex);
+            } finally {
+                onFinished.run();
+            }
+        });
+    }
+
+    private static boolean matches(Path root, Path file, List<PathMatcher> matchers, boolean matchRelative) {
+        Path name = file.getFileName();
+        if (matchers.isEmpty()) {
+            String extension = name.toString();
+            int dot = extension.lastIndexOf('.');
+            return dot >= 0 && IMAGE_EXTENSIONS.contains(extension.substring(dot + 1).toLowerCase(Locale.ROOT));
+        }
+        Path relative = matchRelative ? root.relativize(file) : name;
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relative) || matcher.matches(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path root;
+        private final Path directory;
+        private final boolean recursive;
+        private final List<PathMatcher> matchers;
+        private final boolean matchRelative;
+        private final Set<Path> excluded;
+        private final BooleanSupplier cancelled;
+        private final Consumer<Path> onFile;
+
+        private DirectoryTask(Path root, Path directory, boolean recursive, List<PathMatcher> matchers,
+                boolean matchRelative, Set<Path> excluded, BooleanSupplier cancelled, Consumer<Path> onFile) {
+            this.root = root;
+            this.directory = directory;
+            this.recursive = recursive;
+            this.matchers = matchers;
+            this.matchRelative = matchRelative;
+            this.excluded = excluded;
+            this.cancelled = cancelled;
+            this.onFile = onFile;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled.getAsBoolean() || excluded.contains(directory)) {
+                return;
+            }
+            List<Path> files = new ArrayList<>();
+            List<DirectoryTask> children = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        if (recursive) {
+                            children.add(new DirectoryTask(root, entry, true, matchers, matchRelative, excluded,
+                                    cancelled, onFile));
+                        }
+                    } else if (Files.isRegularFile(entry) && matches(root, entry, matchers, matchRelative)) {
+                        files.add(entry);
+                    }
+                }
+            } catch (IOException ex) {
+                log.warn("Unable to list directory {}", directory, ex);
+                return;
+            }
+
+            files.sort(null);
+            for (Path file : files) {
+                if (cancelled.getAsBoolean()) {
+                    return;
+                }
+                onFile.accept(file);
+            }
+            invokeAll(children);
+        }
+    }
+}
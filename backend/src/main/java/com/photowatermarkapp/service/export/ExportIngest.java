@@ -0,0 +1,27 @@
+package com.photowatermarkapp.service.export;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.photowatermarkapp.model.export.ExportJob;
+
+/**
+ * Receives the files of a job whose upload is still in progress. Every file is queued for export as soon as it has
+ * been written to the job's staging directory.
+ */
+public interface ExportIngest {
+
+    ExportJob getJob();
+
+    void addFile(String originalName, InputStream content) throws IOException;
+
+    /**
+     * Marks the upload as finished; the job completes once the received files are exported.
+     */
+    void complete();
+
+    /**
+     * Ends an upload that broke off. Files received so far are still exported.
+     */
+    void abort(Exception cause);
+}
@@ -0,0 +1,203 @@
+package com.photowatermarkapp.service.export;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.photowatermarkapp.model.export.ExportJob;
+import com.photowatermarkapp.model.export.ExportJobStatus;
+
+/**
+ * Export jobs known to the service, indexed by id, by creation time and by status so that listings cost the size of
+ * the page rather than of the whole history. Finished jobs are compacted to their counters after a grace period and
+ * forgotten once they exceed the retention time or the maximum number of finished jobs. Running jobs are never
+ * dropped. Housekeeping happens on registration and listing, so an idle registry costs nothing.
+ */
+public class ExportJobRegistry {
+
+    /** Newest first; the id breaks ties between jobs created in the same instant. */
+    private record Key(Instant createdAt, String id) {
+
+        private static final Comparator<Key> NEWEST_FIRST = Comparator.comparing(Key::createdAt).reversed()
+                .thenComparing(Key::id);
+
+        private static Key of(ExportJob job) {
+            return new Key(job.getCreatedAt(), job.getId());
+        }
+    }
+
+    private record Finished(ExportJob job, Instant finishedAt) {
+    }
+
+    private final Map<String, ExportJob> byId = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Key, ExportJob> byCreation = new ConcurrentSkipListMap<>(Key.NEWEST_FIRST);
+    private final Map<ExportJobStatus, ConcurrentSkipListMap<Key, ExportJob>> byStatus =
+            new EnumMap<>(ExportJobStatus.class);
+    /** Finished jobs in the order they finished, once for compaction and once for eviction. */
+    private final Queue<Finished> uncompacted = new ConcurrentLinkedQueue<>();
+    private final Queue<Finished> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger finishedCount = new AtomicInteger();
+    private final int maxFinishedJobs;
+    private final Duration retention;
+    private final Duration compactionGrace;
+    private final Clock clock;
+    private volatile Consumer<ExportJob> changeListener;
+
+    public ExportJobRegistry(int maxFinishedJobs, Duration retention, Duration compactionGrace, Clock clock) {
+        this.maxFinishedJobs = Math.max(0, maxFinishedJobs);
+        this.retention = retention;
+        this.compactionGrace = compactionGrace;
+        this.clock = clock;
+        for (ExportJobStatus status : ExportJobStatus.values()) {
+            byStatus.put(status, new ConcurrentSkipListMap<>(Key.NEWEST_FIRST));
+        }
+    }
+
+    /**
+     * Called with every job that is added or changes status.
+     */
+    public void setChangeListener(Consumer<ExportJob> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Adds {@code job} unless a job with its id exists. Returns the existing job in that case, {@code null}
+     * otherwise.
+     */
+    public ExportJob putIfAbsent(ExportJob job) {
+        ExportJob existing = byId.putIfAbsent(job.getId(), job);
+        if (existing != null) {
+            return existing;
+        }
+        Key key = Key.of(job);
+        synchronized (job) {
+            job.setStatusListener((previous, status) -> statusChanged(job, key, previous, status));
+            byCreation.put(key, job);
+            byStatus.get(job.getStatus()).put(key, job);
+            if (job.isFinished()) {
+                finished(job);
+            }
+        }
+        notifyChanged(job);
+        cleanUp();
+        return null;
+    }
+
+    public ExportJob get(String id) {
+        ExportJob job = byId.get(id);
+        if (job != null && job.isFinished() && isExpired(job.getUpdatedAt(), clock.instant())) {
+            remove(job);
+            return null;
+        }
+        return job;
+    }
+
+    public void remove(String id) {
+        ExportJob job = byId.get(id);
+        if (job != null) {
+            remove(job);
+        }
+    }
+
+    /**
+     * Removes {@code job}, but not another job registered under its id since.
+     */
+    private void remove(ExportJob job) {
+        if (!byId.remove(job.getId(), job)) {
+            return;
+        }
+        Key key = Key.of(job);
+        synchronized (job) {
+            job.setStatusListener(null);
+            byCreation.remove(key);
+            byStatus.get(job.getStatus()).remove(key);
+        }
+    }
+
+    /**
+     * Queued and running jobs.
+     */
+    public Collection<ExportJob> active() {
+        List<ExportJob> active = new ArrayList<>(byStatus.get(ExportJobStatus.RUNNING).values());
+        active.addAll(byStatus.get(ExportJobStatus.QUEUED).values());
+        return active;
+    }
+
+    /**
+     * Up to {@code limit} jobs, newest first, optionally only those with {@code status}.
+     */
+    public List<ExportJob> list(ExportJobStatus status, int limit) {
+        cleanUp();
+        ConcurrentSkipListMap<Key, ExportJob> index = status == null ? byCreation : byStatus.get(status);
+        List<ExportJob> page = new ArrayList<>(Math.min(Math.max(limit, 0), 256));
+        for (ExportJob job : index.values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(job);
+        }
+        return page;
+    }
+
+    private void statusChanged(ExportJob job, Key key, ExportJobStatus previous, ExportJobStatus status) {
+        byStatus.get(previous).remove(key);
+        byStatus.get(status).put(key, job);
+        if (job.isFinished() && !isFinished(previous)) {
+            finished(job);
+        }
+        notifyChanged(job);
+    }
+
+    private void notifyChanged(ExportJob job) {
+        Consumer<ExportJob> listener = changeListener;
+        if (listener != null) {
+            listener.accept(job);
+        }
+    }
+
+    private void finished(ExportJob job) {
+        Finished entry = new Finished(job, clock.instant());
+        uncompacted.add(entry);
+        finished.add(entry);
+        finishedCount.incrementAndGet();
+    }
+
+    /**
+     * Compacts finished jobs past the grace period and forgets the ones past retention or over the limit.
+     */
+    private synchronized void cleanUp() {
+        Instant now = clock.instant();
+        Finished head;
+        while ((head = uncompacted.peek()) != null && !head.finishedAt().plus(compactionGrace).isAfter(now)) {
+            uncompacted.poll();
+            head.job().compact();
+        }
+        while ((head = finished.peek()) != null
+                && (finishedCount.get() > maxFinishedJobs || isExpired(head.finishedAt(), now))) {
+            finished.poll();
+            finishedCount.decrementAndGet();
+            remove(head.job());
+        }
+    }
+
+    private boolean isExpired(Instant finishedAt, Instant now) {
+        return !finishedAt.plus(retention).isAfter(now);
+    }
+
+    private static boolean isFinished(ExportJobStatus status) {
+        return status == ExportJobStatus.COMPLETED || status == ExportJobStatus.FAILED
+                || status == ExportJobStatus.CANCELLED;
+    }
+}
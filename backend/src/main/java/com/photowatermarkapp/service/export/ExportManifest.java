@@ -0,0 +1,187 @@
+package com.photowatermarkapp.service.export;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.photowatermarkapp.model.ExportConfig;
+import com.photowatermarkapp.model.WatermarkConfig;
+
+/**
+ * Record of what an incremental export has written into an output directory: per input the content hash, the hash
+ * of the effective configuration and the output file. Entries are appended as files complete, so an interrupted job
+ * loses nothing, and the file is compacted to one line per input when the job finishes.
+ */
+public final class ExportManifest implements Closeable {
+
+    public static final String FILE_NAME = ".photo-watermark-manifest.jsonl";
+
+    private static final Logger log = LoggerFactory.getLogger(ExportManifest.class);
+    /** Sorted output, so that equal configurations always serialize, and therefore hash, the same. */
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+    /** Export settings that decide where outputs go rather than what they look like. */
+    private static final String[] PLACEMENT_FIELDS = { "outputDir", "incremental" };
+
+    /**
+     * {@code source} identifies the input: its absolute path, or the file name for uploads. {@code size} and
+     * {@code modified} let an unchanged local file skip rehashing; {@code modified} is 0 for uploads.
+     */
+    public record Entry(String source, long size, long modified, String inputHash, String configHash,
+            String output) {
+    }
+
+    private final Path file;
+    private final Map<String, Entry> entries;
+    private final OutputStream appender;
+
+    private ExportManifest(Path file, Map<String, Entry> entries, OutputStream appender) {
+        this.file = file;
+        this.entries = entries;
+        this.appender = appender;
+    }
+
+    public static ExportManifest open(Path outputDir) throws IOException {
+        Path file = outputDir.resolve(FILE_NAME);
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    Entry entry = MAPPER.readValue(line, Entry.class);
+                    entries.put(entry.source(), entry);
+                } catch (JsonProcessingException ex) {
+                    // A line cut short by a crash; the file it describes is simply exported again.
+                    log.warn("Ignoring unreadable manifest line in {}", file);
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            // First export into this directory.
+        }
+        OutputStream appender = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (!endsWithLineBreak(file)) {
+            // Keeps new entries off a line cut short by a crash, where they would be unreadable too.
+            appender.write('\n');
+        }
+        return new ExportManifest(file, entries, appender);
+    }
+
+    private static boolean endsWithLineBreak(Path file) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            if (channel.size() == 0) {
+                return true;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.position(channel.size() - 1).read(last);
+            return last.get(0) == '\n';
+        }
+    }
+
+    public synchronized Entry find(String source) {
+        return entries.get(source);
+    }
+
+    public synchronized void record(Entry entry) throws IOException {
+        entries.put(entry.source(), entry);
+        appender.write(MAPPER.writeValueAsBytes(entry));
+        appender.write('\n');
+        appender.flush();
+    }
+
+    /**
+     * Rewrites the manifest with the latest entry per input and closes it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        appender.close();
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            for (Entry entry : entries.values()) {
+                out.write(MAPPER.writeValueAsBytes(entry));
+                out.write('\n');
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static String sha256(byte[] data) {
+        MessageDigest digest = newDigest();
+        digest.update(data);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[1 << 20];
+        try (InputStream in = Files.newInputStream(file)) {
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Hash of everything in the watermark and export configuration that affects the rendered output.
+     */
+    public static String configHash(WatermarkConfig watermarkConfig, ExportConfig exportConfig) {
+        return configHash(watermarkConfig, exportConfig, PLACEMENT_FIELDS);
+    }
+
+    /**
+     * Like {@link #configHash(WatermarkConfig, ExportConfig)}, ignoring the given export settings.
+     */
+    public static String configHash(WatermarkConfig watermarkConfig, ExportConfig exportConfig,
+            String... ignoredExportFields) {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.set("watermark", MAPPER.valueToTree(watermarkConfig));
+        ObjectNode export = MAPPER.valueToTree(exportConfig);
+        export.remove(Arrays.asList(ignoredExportFields));
+        root.set("export", export);
+        try {
+            return sha256(MAPPER.writeValueAsBytes(root));
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.photowatermarkapp.service.export;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.photowatermarkapp.model.export.ExportFileResult;
+import com.photowatermarkapp.model.export.ExportJob;
+import com.photowatermarkapp.model.export.ExportJobDelta;
+import com.photowatermarkapp.model.export.ExportJobStatus;
+
+/**
+ * Server-sent event streams of job progress. Instead of pushing every change, a ticker compares each job with what
+ * a stream last sent and emits only the difference, so a stream costs at most one event per job and interval no
+ * matter how fast files complete, and a result is sent once rather than with every update.
+ * <p>
+ * The ticker never writes to a client itself. Writes run on sender threads, at most one per stream at a time, so a
+ * client that stops reading holds up only its own stream; changes made meanwhile are merged into its next event.
+ * A stream whose write has not returned after {@link #SEND_TIMEOUT_NANOS} is dropped.
+ */
+public class ExportProgressStreams {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportProgressStreams.class);
+    private static final long HEARTBEAT_NANOS = TimeUnit.SECONDS.toNanos(15);
+    private static final long SEND_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final String EVENT_NAME = "progress";
+
+    /** Which file results a job stream carries. */
+    public enum ResultFilter {
+        ALL,
+        FAILED,
+        NONE;
+
+        public static ResultFilter parse(String value) {
+            if (value == null || value.isBlank()) {
+                return ALL;
+            }
+            return switch (value.trim().toLowerCase(Locale.ROOT)) {
+                case "failed" -> FAILED;
+                case "none" -> NONE;
+                default -> ALL;
+            };
+        }
+    }
+
+    private record Snapshot(ExportJobStatus status, String message, String currentFile, int totalFiles,
+            int processedFiles, int successCount, int failureCount, int skippedCount, boolean compacted) {
+
+        private static Snapshot of(ExportJob job) {
+            // Status first: once it reads as finished, the results read after it are complete.
+            ExportJobStatus status = job.getStatus();
+            return new Snapshot(status, job.getMessage(), job.getCurrentFile(), job.getTotalFiles(),
+                    job.getProcessedFiles(), job.getSuccessCount(), job.getFailureCount(), job.getSkippedCount(),
+                    job.isCompacted());
+        }
+    }
+
+    /** What a stream has sent about one job. */
+    private static final class Sent {
+        private Snapshot snapshot;
+        private int resultCursor;
+    }
+
+    private abstract static class Subscription {
+        final SseEmitter emitter = new SseEmitter(0L);
+        volatile long lastSend = System.nanoTime();
+        /** Whether a write is in flight; only the ticker sets it and only the sender clears it. */
+        volatile boolean sending;
+        volatile long sendStarted;
+        /** Set once the stream was given up on while a write was in flight; the sender then closes it. */
+        volatile boolean dropped;
+    }
+
+    private static final class JobSubscription extends Subscription {
+        private final ExportJob job;
+        private final ResultFilter filter;
+        private final Sent sent = new Sent();
+
+        private JobSubscription(ExportJob job, ResultFilter filter) {
+            this.job = job;
+            this.filter = filter;
+        }
+    }
+
+    private static final class AllJobsSubscription extends Subscription {
+        private final Map<String, Sent> sent = new HashMap<>();
+        /** Changed jobs not yet looked at, kept while a write is in flight. */
+        private final Map<String, ExportJob> pending = new LinkedHashMap<>();
+    }
+
+    private final Set<JobSubscription> jobSubscriptions = ConcurrentHashMap.newKeySet();
+    private final Set<AllJobsSubscription> allJobsSubscriptions = ConcurrentHashMap.newKeySet();
+    /** Jobs that were created or changed status since the last tick, for streams of all jobs. */
+    private final Set<ExportJob> changed = ConcurrentHashMap.newKeySet();
+    private final Supplier<Collection<ExportJob>> activeJobs;
+    private final ScheduledExecutorService ticker;
+    /** Unbounded, but never runs more writes than there are streams. */
+    private final ExecutorService sender;
+
+    /**
+     * {@code activeJobs} supplies the queued and running jobs; streams of all jobs look at those and at the jobs
+     * reported through {@link #jobChanged}.
+     */
+    public ExportProgressStreams(long intervalMillis, Supplier<Collection<ExportJob>> activeJobs) {
+        this.activeJobs = activeJobs;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(daemon("export-progress-events"));
+        this.sender = Executors.newCachedThreadPool(daemon("export-progress-sender"));
+        long interval = Math.max(20, intervalMillis);
+        ticker.scheduleWithFixedDelay(this::tick, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public SseEmitter subscribe(ExportJob job, ResultFilter filter) {
+        JobSubscription subscription = new JobSubscription(job, filter);
+        register(subscription, jobSubscriptions);
+        return subscription.emitter;
+    }
+
+    public SseEmitter subscribeAll() {
+        AllJobsSubscription subscription = new AllJobsSubscription();
+        register(subscription, allJobsSubscriptions);
+        return subscription.emitter;
+    }
+
+    public void jobChanged(ExportJob job) {
+        if (!allJobsSubscriptions.isEmpty()) {
+            changed.add(job);
+        }
+    }
+
+    public void shutdown() {
+        ticker.shutdownNow();
+        jobSubscriptions.forEach(this::close);
+        allJobsSubscriptions.forEach(this::close);
+        sender.shutdown();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private <S extends Subscription> void register(S subscription, Set<S> subscriptions) {
+        subscriptions.add(subscription);
+        subscription.emitter.onCompletion(() -> subscriptions.remove(subscription));
+        subscription.emitter.onTimeout(() -> subscriptions.remove(subscription));
+        subscription.emitter.onError(ex -> subscriptions.remove(subscription));
+    }
+
+    private void tick() {
+        try {
+            for (JobSubscription subscription : jobSubscriptions) {
+                if (isBusy(subscription)) {
+                    continue;
+                }
+                ExportJobDelta delta = diff(subscription.job, subscription.sent, subscription.filter);
+                List<ExportJobDelta> deltas = delta == null ? List.of() : List.of(delta);
+                dispatch(subscription, deltas, delta != null && isFinished(subscription.sent.snapshot.status()));
+            }
+            List<ExportJob> changedJobs = new ArrayList<>();
+            for (ExportJob job : changed) {
+                changed.remove(job);
+                changedJobs.add(job);
+            }
+            if (allJobsSubscriptions.isEmpty()) {
+                return;
+            }
+            Collection<ExportJob> active = activeJobs.get();
+            for (AllJobsSubscription subscription : allJobsSubscriptions) {
+                changedJobs.forEach(job -> subscription.pending.put(job.getId(), job));
+                if (isBusy(subscription)) {
+                    continue;
+                }
+                active.forEach(job -> subscription.pending.putIfAbsent(job.getId(), job));
+                List<ExportJobDelta> deltas = new ArrayList<>();
+                for (ExportJob job : subscription.pending.values()) {
+                    Sent sent = subscription.sent.computeIfAbsent(job.getId(), id -> new Sent());
+                    ExportJobDelta delta = diff(job, sent, ResultFilter.NONE);
+                    if (isFinished(sent.snapshot.status())) {
+                        // Sent in full from here on; a later change is reported as a new job.
+                        subscription.sent.remove(job.getId());
+                    }
+                    if (delta != null) {
+                        deltas.add(delta);
+                    }
+                }
+                subscription.pending.clear();
+                dispatch(subscription, deltas, false);
+            }
+        } catch (RuntimeException ex) {
+            // Keep ticking; a failure here must not end progress reporting for good.
+            log.warn("Failed to publish export progress: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * What changed in {@code job} since {@code sent}, or {@code null} if nothing did. Updates {@code sent}.
+     */
+    private static ExportJobDelta diff(ExportJob job, Sent sent, ResultFilter filter) {
+        Snapshot now = Snapshot.of(job);
+        Snapshot before = sent.snapshot;
+        ExportJobDelta delta = new ExportJobDelta();
+        boolean changed = false;
+        if (before == null || before.status() != now.status()) {
+            delta.setStatus(now.status());
+            changed = true;
+        }
+        if (before == null ? now.message() != null : !Objects.equals(before.message(), now.message())) {
+            delta.setMessage(Objects.requireNonNullElse(now.message(), ""));
+            changed = true;
+        }
+        if (before == null ? now.currentFile() != null : !Objects.equals(before.currentFile(), now.currentFile())) {
+            // An empty name means no file is being processed any more.
+            delta.setCurrentFile(Objects.requireNonNullElse(now.currentFile(), ""));
+            changed = true;
+        }
+        if (before == null || before.totalFiles() != now.totalFiles()) {
+            delta.setTotalFiles(now.totalFiles());
+            changed = true;
+        }
+        if (before == null || before.processedFiles() != now.processedFiles()) {
+            delta.setProcessedFiles(now.processedFiles());
+            changed = true;
+        }
+        if (before == null || before.successCount() != now.successCount()) {
+            delta.setSuccessCount(now.successCount());
+            changed = true;
+        }
+        if (before == null || before.failureCount() != now.failureCount()) {
+            delta.setFailureCount(now.failureCount());
+            changed = true;
+        }
+        if (before == null || before.skippedCount() != now.skippedCount()) {
+            delta.setSkippedCount(now.skippedCount());
+            changed = true;
+        }
+        if (delta.getTotalFiles() != null || delta.getProcessedFiles() != null) {
+            delta.setProgress(now.totalFiles() == 0 ? 0d : (double) now.processedFiles() / now.totalFiles());
+        }
+        if (now.compacted() && (before == null || !before.compacted())) {
+            delta.setCompacted(true);
+            changed = true;
+        }
+        if (filter != ResultFilter.NONE && !now.compacted()) {
+            List<ExportFileResult> appended = job.resultsFrom(sent.resultCursor);
+            int from = sent.resultCursor;
+            sent.resultCursor += appended.size();
+            if (filter == ResultFilter.FAILED && !appended.isEmpty()) {
+                appended = new ArrayList<>(appended);
+                appended.removeIf(ExportFileResult::isSuccess);
+            }
+            if (!appended.isEmpty()) {
+                // Positions only hold for the unfiltered list; filtered results are appended by the client.
+                if (filter == ResultFilter.ALL) {
+                    delta.setResultsFrom(from);
+                }
+                delta.setResults(appended);
+                changed = true;
+            }
+        }
+        sent.snapshot = now;
+        if (!changed) {
+            return null;
+        }
+        delta.setId(job.getId());
+        return delta;
+    }
+
+    private static boolean isFinished(ExportJobStatus status) {
+        return status == ExportJobStatus.COMPLETED || status == ExportJobStatus.FAILED
+                || status == ExportJobStatus.CANCELLED;
+    }
+
+    /**
+     * Whether a write to {@code subscription} is still in flight. Drops the subscription once that write has taken
+     * longer than {@link #SEND_TIMEOUT_NANOS}; its sender closes the stream if the write ever returns.
+     */
+    private boolean isBusy(Subscription subscription) {
+        if (!subscription.sending) {
+            return false;
+        }
+        if (System.nanoTime() - subscription.sendStarted > SEND_TIMEOUT_NANOS) {
+            log.debug("Dropping a progress stream whose client stopped reading");
+            subscription.dropped = true;
+            unsubscribe(subscription);
+        }
+        return true;
+    }
+
+    /**
+     * Hands {@code deltas} to a sender thread, or a comment when there is nothing to send and the stream has been
+     * idle for a while, so that proxies keep it open and dead clients are noticed. {@code complete} ends the stream
+     * after the last event.
+     */
+    private void dispatch(Subscription subscription, List<ExportJobDelta> deltas, boolean complete) {
+        if (deltas.isEmpty() && System.nanoTime() - subscription.lastSend < HEARTBEAT_NANOS) {
+            return;
+        }
+        subscription.sendStarted = System.nanoTime();
+        subscription.sending = true;
+        try {
+            sender.execute(() -> deliver(subscription, deltas, complete));
+        } catch (RejectedExecutionException ex) {
+            subscription.sending = false;
+        }
+    }
+
+    private void deliver(Subscription subscription, List<ExportJobDelta> deltas, boolean complete) {
+        try {
+            if (deltas.isEmpty()) {
+                subscription.emitter.send(SseEmitter.event().comment("keep-alive"));
+            }
+            for (ExportJobDelta delta : deltas) {
+                subscription.emitter.send(SseEmitter.event().name(EVENT_NAME).data(delta, MediaType.APPLICATION_JSON));
+            }
+            subscription.lastSend = System.nanoTime();
+            if (complete || subscription.dropped) {
+                subscription.emitter.complete();
+                unsubscribe(subscription);
+            }
+        } catch (IOException | IllegalStateException ex) {
+            // The client is gone.
+            subscription.emitter.completeWithError(ex);
+            unsubscribe(subscription);
+        } finally {
+            subscription.sending = false;
+        }
+    }
+
+    /**
+     * Completes the stream right away when it is idle; a stream with a write in flight is completed by its sender.
+     */
+    private void close(Subscription subscription) {
+        subscription.dropped = true;
+        if (!subscription.sending) {
+            subscription.emitter.complete();
+        }
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        jobSubscriptions.remove(subscription);
+        allJobsSubscriptions.remove(subscription);
+    }
+}
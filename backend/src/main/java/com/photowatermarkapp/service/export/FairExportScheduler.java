@@ -0,0 +1,244 @@
+package com.photowatermarkapp.service.export;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Dispatches file-level tasks of all active jobs onto a shared executor. Jobs in the high-priority lane are always
+ * served first; inside a lane jobs are interleaved by weighted fair queuing, so a job receives worker time in
+ * proportion to its weight no matter how many files it has queued or when it was submitted.
+ * <p>
+ * At most {@code maxInFlight} tasks are handed to the executor at a time, which keeps the executor queue empty and
+ * lets every dispatch decision be made only when a worker actually becomes free. Continuations of work a job has
+ * already started, such as the later stages of a {@link StagedPipeline}, are dispatched before new work.
+ */
+public class FairExportScheduler {
+
+    public enum Lane {
+        HIGH,
+        NORMAL
+    }
+
+    /**
+     * Supplies the tasks of one job. Polled under the scheduler lock, so implementations must not block.
+     */
+    public interface TaskSource {
+
+        /**
+         * Returns the next task that can run right now, or {@code null} when none is ready.
+         */
+        Runnable poll();
+
+        /**
+         * Returns {@code true} once {@link #poll()} will never produce another task.
+         */
+        boolean isExhausted();
+
+        /**
+         * Returns a task that continues work the job has already started and that holds memory until the task has
+         * run, or {@code null}. Such tasks must not wait for memory themselves. They are handed out before any new
+         * work and regardless of the job's concurrency limit, so that memory held between steps is always released
+         * and tasks waiting for it cannot occupy every worker for good.
+         */
+        default Runnable pollContinuation() {
+            return null;
+        }
+    }
+
+    private static final class Flow {
+
+        private final String id;
+        private final Lane lane;
+        private final int weight;
+        private final int maxConcurrency;
+        private final TaskSource tasks;
+        private final Runnable onDrained;
+        private double virtualFinish;
+        private int inFlight;
+        private boolean exhausted;
+        private Runnable next;
+
+        private Flow(String id, Lane lane, int weight, int maxConcurrency, TaskSource tasks,
+                Runnable onDrained) {
+            this.id = id;
+            this.lane = lane;
+            this.weight = Math.max(1, weight);
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            this.tasks = tasks;
+            this.onDrained = onDrained;
+        }
+    }
+
+    private final Executor executor;
+    private final int maxInFlight;
+    private final Map<String, Flow> flows = new LinkedHashMap<>();
+    private int inFlight;
+
+    public FairExportScheduler(Executor executor, int maxInFlight) {
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Registers a job. {@code tasks} is polled for the job's next task whenever the job is chosen;
+     * {@code onDrained} runs once the source is exhausted and the job's last task has finished.
+     */
+    public void register(String id, Lane lane, int weight, int maxConcurrency, TaskSource tasks,
+            Runnable onDrained) {
+        synchronized (this) {
+            Flow flow = new Flow(id, lane, weight, maxConcurrency, tasks, onDrained);
+            // New jobs start at the lane's current virtual time so they cannot bank credit while idle.
+            flow.virtualFinish = flows.values().stream()
+                    .filter(existing -> existing.lane == lane)
+                    .mapToDouble(existing -> existing.virtualFinish)
+                    .min()
+                    .orElse(0d);
+            flows.put(id, flow);
+        }
+        dispatch();
+    }
+
+    /**
+     * Stops handing out tasks for the job. Tasks already running are left to finish.
+     */
+    public void cancel(String id) {
+        List<Runnable> drained = new ArrayList<>();
+        synchronized (this) {
+            Flow flow = flows.get(id);
+            if (flow == null) {
+                return;
+            }
+            flow.exhausted = true;
+            flow.next = null;
+            retireIfDrained(flow, drained);
+        }
+        drained.forEach(Runnable::run);
+        dispatch();
+    }
+
+    /**
+     * Re-evaluates all jobs, e.g. after a task source that returned nothing has new work ready.
+     */
+    public void signal() {
+        dispatch();
+    }
+
+    public synchronized int activeJobs() {
+        return flows.size();
+    }
+
+    private void dispatch() {
+        List<Runnable> drained = new ArrayList<>();
+        List<Runnable> launch = new ArrayList<>();
+        synchronized (this) {
+            Set<Flow> idle = new HashSet<>();
+            while (inFlight < maxInFlight) {
+                Runnable continuation = nextContinuation();
+                if (continuation != null) {
+                    launch.add(continuation);
+                    continue;
+                }
+                Flow flow = pick(Lane.HIGH, idle, drained);
+                if (flow == null) {
+                    flow = pick(Lane.NORMAL, idle, drained);
+                }
+                if (flow == null) {
+                    break;
+                }
+                launch.add(start(flow, flow.next));
+                flow.next = null;
+            }
+        }
+        drained.forEach(Runnable::run);
+        launch.forEach(executor::execute);
+    }
+
+    private Runnable start(Flow flow, Runnable task) {
+        flow.inFlight++;
+        flow.virtualFinish += 1d / flow.weight;
+        inFlight++;
+        return wrap(flow, task);
+    }
+
+    /**
+     * Starts the continuation of the first job, in lane and fair-queuing order, that has one ready.
+     */
+    private Runnable nextContinuation() {
+        for (Lane lane : Lane.values()) {
+            List<Flow> candidates = flows.values().stream()
+                    .filter(flow -> flow.lane == lane && !flow.exhausted)
+                    .sorted(Comparator.comparingDouble(flow -> flow.virtualFinish))
+                    .toList();
+            for (Flow flow : candidates) {
+                Runnable task = flow.tasks.pollContinuation();
+                if (task != null) {
+                    return start(flow, task);
+                }
+            }
+        }
+        return null;
+    }
+
+    private Flow pick(Lane lane, Set<Flow> idle, List<Runnable> drained) {
+        while (true) {
+            Flow best = null;
+            for (Flow flow : flows.values()) {
+                if (flow.lane != lane || flow.exhausted || flow.inFlight >= flow.maxConcurrency
+                        || idle.contains(flow)) {
+                    continue;
+                }
+                if (best == null || flow.virtualFinish < best.virtualFinish) {
+                    best = flow;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            if (best.next == null) {
+                best.next = best.tasks.poll();
+            }
+            if (best.next != null) {
+                return best;
+            }
+            if (best.tasks.isExhausted()) {
+                best.exhausted = true;
+                retireIfDrained(best, drained);
+            } else {
+                idle.add(best);
+            }
+        }
+    }
+
+    private void retireIfDrained(Flow flow, List<Runnable> drained) {
+        if (flow.exhausted && flow.inFlight == 0 && flows.remove(flow.id, flow)) {
+            drained.add(flow.onDrained);
+        }
+    }
+
+    private Runnable wrap(Flow flow, Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } finally {
+                complete(flow);
+            }
+        };
+    }
+
+    private void complete(Flow flow) {
+        List<Runnable> drained = new ArrayList<>();
+        synchronized (this) {
+            flow.inFlight--;
+            inFlight--;
+            retireIfDrained(flow, drained);
+        }
+        drained.forEach(Runnable::run);
+        dispatch();
+    }
+}
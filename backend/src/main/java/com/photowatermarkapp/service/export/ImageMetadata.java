@@ -0,0 +1,577 @@
+package com.photowatermarkapp.service.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * EXIF, XMP and ICC metadata of a JPEG or PNG file, held as the raw bytes of its segments and chunks so that it can be
+ * copied into an output file without building {@link javax.imageio.metadata.IIOMetadata} trees. Only the dimension
+ * tags are rewritten. The orientation tag is carried over as it is, since exports keep the stored pixel orientation.
+ * <p>
+ * The EXIF thumbnail is dropped, as it shows the photo without the watermark.
+ */
+public final class ImageMetadata {
+
+    private static final byte[] JPEG_SIGNATURE = { (byte) 0xFF, (byte) 0xD8 };
+    private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+    private static final byte[] EXIF_HEADER = ascii("Exif\0\0");
+    private static final byte[] XMP_HEADER = ascii("http://ns.adobe.com/xap/1.0/\0");
+    private static final byte[] EXTENDED_XMP_HEADER = ascii("http://ns.adobe.com/xmp/extension/\0");
+    private static final byte[] ICC_HEADER = ascii("ICC_PROFILE\0");
+    private static final byte[] PHOTOSHOP_HEADER = ascii("Photoshop 3.0\0");
+    private static final String XMP_KEYWORD = "XML:com.adobe.xmp";
+    private static final int APP1 = 0xE1;
+    private static final int APP2 = 0xE2;
+    private static final int APP13 = 0xED;
+    private static final int SOS = 0xDA;
+    private static final int EOI = 0xD9;
+    /** Largest payload of a JPEG marker segment. */
+    private static final int MAX_SEGMENT_PAYLOAD = 65533;
+    /** Chunks larger than this are image data or garbage rather than metadata. */
+    private static final int MAX_CHUNK_LENGTH = 16 * 1024 * 1024;
+    private static final Pattern XMP_DIMENSION = Pattern.compile(
+            "((?:tiff:ImageWidth|tiff:ImageLength|exif:PixelXDimension|exif:PixelYDimension)(?:=\"|>))(\\d+)");
+    private static final int[] TIFF_TYPE_SIZES = { 0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8 };
+
+    private final boolean fromPng;
+    /** TIFF structure of the EXIF data, without the JPEG "Exif" header. */
+    private final byte[] exif;
+    private final byte[] xmp;
+    /** Complete profile, joined from the APP2 chunks of a JPEG source. */
+    private final byte[] iccProfile;
+    /** Data of the iCCP chunk of a PNG source. */
+    private final byte[] iccChunk;
+    /** Further complete segments, such as extended XMP and IPTC, only carried into JPEG output. */
+    private final List<byte[]> jpegSegments;
+    /** Further text chunks, only carried into PNG output. */
+    private final List<PngEncoder.Chunk> pngChunks;
+
+    private ImageMetadata(boolean fromPng, byte[] exif, byte[] xmp, byte[] iccProfile, byte[] iccChunk,
+            List<byte[]> jpegSegments, List<PngEncoder.Chunk> pngChunks) {
+        this.fromPng = fromPng;
+        this.exif = exif;
+        this.xmp = xmp;
+        this.iccProfile = iccProfile;
+        this.iccChunk = iccChunk;
+        this.jpegSegments = jpegSegments;
+        this.pngChunks = pngChunks;
+    }
+
+    /**
+     * Reads the metadata of a JPEG or PNG file. Returns {@code null} for other formats and for files without
+     * metadata.
+     */
+    public static ImageMetadata read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(new ByteSource() {
+                @Override
+                public long size() throws IOException {
+                    return channel.size();
+                }
+
+                @Override
+                public byte[] read(long position, int length) throws IOException {
+                    ByteBuffer buffer = ByteBuffer.allocate(length);
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) < 0) {
+                            throw new IOException("Unexpected end of file");
+                        }
+                    }
+                    return buffer.array();
+                }
+            });
+        }
+    }
+
+    public static ImageMetadata read(byte[] data) throws IOException {
+        return read(new ByteSource() {
+            @Override
+            public long size() {
+                return data.length;
+            }
+
+            @Override
+            public byte[] read(long position, int length) throws IOException {
+                if (position + length > data.length) {
+                    throw new IOException("Unexpected end of file");
+                }
+                return Arrays.copyOfRange(data, (int) position, (int) position + length);
+            }
+        });
+    }
+
+    private static ImageMetadata read(ByteSource source) throws IOException {
+        long size = source.size();
+        if (size >= PNG_SIGNATURE.length && Arrays.equals(source.read(0, PNG_SIGNATURE.length), PNG_SIGNATURE)) {
+            return readPng(source, size);
+        }
+        if (size >= 4 && Arrays.equals(source.read(0, 2), JPEG_SIGNATURE)) {
+            return readJpeg(source, size);
+        }
+        return null;
+    }
+
+    private static ImageMetadata readJpeg(ByteSource source, long size) throws IOException {
+        byte[] exif = null;
+        byte[] xmp = null;
+        TreeMap<Integer, byte[]> iccChunks = new TreeMap<>();
+        int iccCount = 0;
+        List<byte[]> segments = new ArrayList<>();
+        long position = 2;
+        while (position + 4 <= size) {
+            byte[] header = source.read(position, 4);
+            if ((header[0] & 0xff) != 0xFF) {
+                break;
+            }
+            int marker = header[1] & 0xff;
+            if (marker == 0xFF) {
+                // Fill byte in front of the marker.
+                position++;
+                continue;
+            }
+            if (marker == SOS || marker == EOI) {
+                break;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                position += 2;
+                continue;
+            }
+            int length = ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+            if (length < 2 || position + 2 + length > size) {
+                break;
+            }
+            if (marker == APP1 || marker == APP2 || marker == APP13) {
+                byte[] payload = source.read(position + 4, length - 2);
+                if (marker == APP1 && exif == null && startsWith(payload, EXIF_HEADER)) {
+                    exif = Arrays.copyOfRange(payload, EXIF_HEADER.length, payload.length);
+                } else if (marker == APP1 && xmp == null && startsWith(payload, XMP_HEADER)) {
+                    xmp = Arrays.copyOfRange(payload, XMP_HEADER.length, payload.length);
+                } else if (marker == APP1 && startsWith(payload, EXTENDED_XMP_HEADER)
+                        || marker == APP13 && startsWith(payload, PHOTOSHOP_HEADER)) {
+                    segments.add(segment(marker, payload));
+                } else if (marker == APP2 && startsWith(payload, ICC_HEADER) && payload.length > ICC_HEADER.length + 2) {
+                    iccChunks.put(payload[ICC_HEADER.length] & 0xff,
+                            Arrays.copyOfRange(payload, ICC_HEADER.length + 2, payload.length));
+                    iccCount = payload[ICC_HEADER.length + 1] & 0xff;
+                }
+            }
+            position += 2 + length;
+        }
+        byte[] icc = null;
+        if (!iccChunks.isEmpty() && iccChunks.size() == iccCount) {
+            ByteArrayOutputStream joined = new ByteArrayOutputStream();
+            iccChunks.values().forEach(joined::writeBytes);
+            icc = joined.toByteArray();
+        }
+        if (exif == null && xmp == null && icc == null && segments.isEmpty()) {
+            return null;
+        }
+        return new ImageMetadata(false, exif, xmp, icc, null, segments, List.of());
+    }
+
+    private static ImageMetadata readPng(ByteSource source, long size) throws IOException {
+        byte[] exif = null;
+        byte[] xmp = null;
+        byte[] iccChunk = null;
+        List<PngEncoder.Chunk> chunks = new ArrayList<>();
+        long position = PNG_SIGNATURE.length;
+        while (position + 12 <= size) {
+            byte[] header = source.read(position, 8);
+            long length = ByteBuffer.wrap(header).getInt() & 0xffffffffL;
+            String type = new String(header, 4, 4, StandardCharsets.ISO_8859_1);
+            if ("IEND".equals(type) || position + 12 + length > size) {
+                break;
+            }
+            boolean wanted = switch (type) {
+                case "eXIf", "iCCP", "iTXt", "tEXt", "zTXt" -> length <= MAX_CHUNK_LENGTH;
+                default -> false;
+            };
+            if (wanted) {
+                byte[] data = source.read(position + 8, (int) length);
+                switch (type) {
+                    case "eXIf" -> exif = exif == null ? data : exif;
+                    case "iCCP" -> iccChunk = iccChunk == null ? data : iccChunk;
+                    case "iTXt" -> {
+                        byte[] text = xmp == null ? xmpText(data) : null;
+                        if (text != null) {
+                            xmp = text;
+                        } else {
+                            chunks.add(new PngEncoder.Chunk(type, data));
+                        }
+                    }
+                    default -> chunks.add(new PngEncoder.Chunk(type, data));
+                }
+            }
+            position += 12 + length;
+        }
+        if (exif == null && xmp == null && iccChunk == null && chunks.isEmpty()) {
+            return null;
+        }
+        return new ImageMetadata(true, exif, xmp, null, iccChunk, List.of(), chunks);
+    }
+
+    /**
+     * Whether the decoders leave pixels in the colour space of the source profile. The JDK PNG reader ignores iCCP,
+     * whereas the JPEG reader converts pixels of a file with an embedded profile to sRGB, after which the profile
+     * would no longer describe them.
+     */
+    public boolean isIccPreservedByDecoder() {
+        return fromPng;
+    }
+
+    /**
+     * A copy with the dimension tags of EXIF and XMP set to {@code width} x {@code height}.
+     */
+    public ImageMetadata forOutput(int width, int height) {
+        byte[] patchedExif = exif == null ? null : patchExif(exif, width, height);
+        byte[] patchedXmp = xmp == null ? null : patchXmp(xmp, width, height);
+        return new ImageMetadata(fromPng, patchedExif, patchedXmp, iccProfile, iccChunk, jpegSegments, pngChunks);
+    }
+
+    /**
+     * Complete APPn segments (marker, length and payload) for a JPEG file.
+     */
+    public List<byte[]> jpegSegments(boolean includeIcc) {
+        List<byte[]> result = new ArrayList<>();
+        if (exif != null && EXIF_HEADER.length + exif.length <= MAX_SEGMENT_PAYLOAD) {
+            result.add(segment(APP1, concat(EXIF_HEADER, exif)));
+        }
+        if (xmp != null && XMP_HEADER.length + xmp.length <= MAX_SEGMENT_PAYLOAD) {
+            result.add(segment(APP1, concat(XMP_HEADER, xmp)));
+        }
+        result.addAll(jpegSegments);
+        byte[] profile = includeIcc ? iccProfile() : null;
+        if (profile != null) {
+            int chunkSize = MAX_SEGMENT_PAYLOAD - ICC_HEADER.length - 2;
+            int count = (profile.length + chunkSize - 1) / chunkSize;
+            if (count <= 255) {
+                for (int i = 0; i < count; i++) {
+                    int from = i * chunkSize;
+                    int to = Math.min(profile.length, from + chunkSize);
+                    byte[] payload = new byte[ICC_HEADER.length + 2 + to - from];
+                    System.arraycopy(ICC_HEADER, 0, payload, 0, ICC_HEADER.length);
+                    payload[ICC_HEADER.length] = (byte) (i + 1);
+                    payload[ICC_HEADER.length + 1] = (byte) count;
+                    System.arraycopy(profile, from, payload, ICC_HEADER.length + 2, to - from);
+                    result.add(segment(APP2, payload));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ancillary chunks for a PNG file.
+     */
+    public List<PngEncoder.Chunk> pngChunks(boolean includeIcc) {
+        List<PngEncoder.Chunk> result = new ArrayList<>();
+        if (includeIcc) {
+            byte[] chunk = iccChunk != null ? iccChunk : iccChunkOf(iccProfile);
+            if (chunk != null) {
+                result.add(new PngEncoder.Chunk("iCCP", chunk));
+            }
+        }
+        if (exif != null) {
+            result.add(new PngEncoder.Chunk("eXIf", exif));
+        }
+        if (xmp != null) {
+            byte[] keyword = ascii(XMP_KEYWORD);
+            // Keyword, then uncompressed, no language tag and no translated keyword.
+            byte[] data = new byte[keyword.length + 5 + xmp.length];
+            System.arraycopy(keyword, 0, data, 0, keyword.length);
+            System.arraycopy(xmp, 0, data, keyword.length + 5, xmp.length);
+            result.add(new PngEncoder.Chunk("iTXt", data));
+        }
+        result.addAll(pngChunks);
+        return result;
+    }
+
+    private byte[] iccProfile() {
+        if (iccProfile != null || iccChunk == null) {
+            return iccProfile;
+        }
+        // Profile name, NUL, compression method, then the zlib stream.
+        int nul = indexOf(iccChunk, (byte) 0, 0);
+        return nul < 0 || nul + 2 > iccChunk.length ? null : inflate(iccChunk, nul + 2);
+    }
+
+    private static byte[] iccChunkOf(byte[] profile) {
+        if (profile == null) {
+            return null;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(profile);
+            deflater.finish();
+            ByteArrayOutputStream data = new ByteArrayOutputStream(profile.length / 2 + 16);
+            data.writeBytes(ascii("ICC Profile\0\0"));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                data.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return data.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * The text of an iTXt chunk holding XMP, or {@code null} for any other iTXt chunk.
+     */
+    private static byte[] xmpText(byte[] data) {
+        byte[] keyword = ascii(XMP_KEYWORD);
+        if (data.length < keyword.length + 5 || !startsWith(data, keyword) || data[keyword.length] != 0) {
+            return null;
+        }
+        boolean compressed = data[keyword.length + 1] != 0;
+        int language = indexOf(data, (byte) 0, keyword.length + 3);
+        int translated = language < 0 ? -1 : indexOf(data, (byte) 0, language + 1);
+        if (translated < 0) {
+            return null;
+        }
+        return compressed ? inflate(data, translated + 1) : Arrays.copyOfRange(data, translated + 1, data.length);
+    }
+
+    private static byte[] inflate(byte[] data, int offset) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, data.length - offset);
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                result.write(buffer, 0, count);
+            }
+            return result.toByteArray();
+        } catch (DataFormatException ex) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] patchXmp(byte[] xmp, int width, int height) {
+        String text = new String(xmp, StandardCharsets.UTF_8);
+        Matcher matcher = XMP_DIMENSION.matcher(text);
+        if (!matcher.find()) {
+            return xmp;
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        do {
+            String name = matcher.group(1);
+            boolean horizontal = name.startsWith("tiff:ImageWidth") || name.startsWith("exif:PixelXDimension");
+            matcher.appendReplacement(result, name + (horizontal ? width : height));
+        } while (matcher.find());
+        matcher.appendTail(result);
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rewrites ImageWidth/ImageLength of IFD0 and PixelXDimension/PixelYDimension of the EXIF IFD, and removes the
+     * thumbnail IFD. Malformed data is returned unchanged.
+     */
+    private static byte[] patchExif(byte[] source, int width, int height) {
+        byte[] tiff = source.clone();
+        try {
+            Tiff structure = new Tiff(tiff);
+            int ifd0 = structure.int32(4);
+            structure.setDimension(ifd0, 0x0100, width);
+            structure.setDimension(ifd0, 0x0101, height);
+            int exifIfd = structure.pointer(ifd0, 0x8769);
+            if (exifIfd > 0) {
+                structure.setDimension(exifIfd, 0xA002, width);
+                structure.setDimension(exifIfd, 0xA003, height);
+            }
+            int link = ifd0 + 2 + structure.int16(ifd0) * 12;
+            int ifd1 = structure.int32(link);
+            if (ifd1 == 0) {
+                return tiff;
+            }
+            structure.setInt32(link, 0);
+            int thumbnail = structure.pointer(ifd1, 0x0201);
+            int thumbnailLength = structure.pointer(ifd1, 0x0202);
+            int ifd1End = ifd1 + 2 + structure.int16(ifd1) * 12 + 4;
+            int start = ifd1;
+            int end = ifd1End;
+            if (thumbnail > 0 && thumbnailLength > 0 && thumbnail + thumbnailLength <= tiff.length) {
+                start = Math.min(start, thumbnail);
+                end = Math.max(end, thumbnail + thumbnailLength);
+                Arrays.fill(tiff, thumbnail, thumbnail + thumbnailLength, (byte) 0);
+            }
+            // Usually the thumbnail comes last and can be cut off; otherwise it stays blanked out.
+            int used = structure.end(ifd0);
+            if (exifIfd > 0) {
+                used = Math.max(used, structure.end(exifIfd));
+                int interop = structure.pointer(exifIfd, 0xA005);
+                used = interop > 0 ? Math.max(used, structure.end(interop)) : used;
+            }
+            int gps = structure.pointer(ifd0, 0x8825);
+            used = gps > 0 ? Math.max(used, structure.end(gps)) : used;
+            if (start >= used && end >= tiff.length - 16) {
+                return Arrays.copyOf(tiff, start);
+            }
+            return tiff;
+        } catch (IndexOutOfBoundsException ex) {
+            return source;
+        }
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        byte[] segment = new byte[payload.length + 4];
+        segment[0] = (byte) 0xFF;
+        segment[1] = (byte) marker;
+        segment[2] = (byte) ((payload.length + 2) >> 8);
+        segment[3] = (byte) (payload.length + 2);
+        System.arraycopy(payload, 0, segment, 4, payload.length);
+        return segment;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        return data.length >= prefix.length && Arrays.equals(data, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static int indexOf(byte[] data, byte value, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private interface ByteSource {
+        long size() throws IOException;
+
+        byte[] read(long position, int length) throws IOException;
+    }
+
+    /**
+     * Minimal access to the IFDs of a TIFF structure in either byte order.
+     */
+    private static final class Tiff {
+
+        private final byte[] data;
+        private final boolean littleEndian;
+
+        private Tiff(byte[] data) {
+            this.data = data;
+            if (data.length < 8 || data[0] != data[1] || (data[0] != 'I' && data[0] != 'M')) {
+                throw new IndexOutOfBoundsException("Not a TIFF structure");
+            }
+            this.littleEndian = data[0] == 'I';
+        }
+
+        int int16(int offset) {
+            checkRange(offset, 2);
+            int a = data[offset] & 0xff;
+            int b = data[offset + 1] & 0xff;
+            return littleEndian ? a | (b << 8) : (a << 8) | b;
+        }
+
+        int int32(int offset) {
+            checkRange(offset, 4);
+            return littleEndian ? int16(offset) | (int16(offset + 2) << 16) : (int16(offset) << 16) | int16(offset + 2);
+        }
+
+        void setInt16(int offset, int value) {
+            checkRange(offset, 2);
+            data[offset + (littleEndian ? 0 : 1)] = (byte) value;
+            data[offset + (littleEndian ? 1 : 0)] = (byte) (value >> 8);
+        }
+
+        void setInt32(int offset, int value) {
+            setInt16(offset + (littleEndian ? 0 : 2), value & 0xffff);
+            setInt16(offset + (littleEndian ? 2 : 0), value >>> 16);
+        }
+
+        /**
+         * Offset of the entry with {@code tag} in the IFD at {@code ifd}, or -1.
+         */
+        int entry(int ifd, int tag) {
+            int count = int16(ifd);
+            for (int i = 0; i < count; i++) {
+                int entry = ifd + 2 + i * 12;
+                if (int16(entry) == tag) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * The single SHORT or LONG value of the entry with {@code tag}, or 0 when there is none.
+         */
+        int pointer(int ifd, int tag) {
+            int entry = entry(ifd, tag);
+            if (entry < 0) {
+                return 0;
+            }
+            int type = int16(entry + 2);
+            return type == 3 ? int16(entry + 8) : type == 4 ? int32(entry + 8) : 0;
+        }
+
+        void setDimension(int ifd, int tag, int value) {
+            int entry = entry(ifd, tag);
+            if (entry < 0) {
+                return;
+            }
+            int type = int16(entry + 2);
+            if (type == 4) {
+                setInt32(entry + 8, value);
+            } else if (type == 3 && value <= 0xffff) {
+                setInt16(entry + 8, value);
+            }
+        }
+
+        /**
+         * End of the IFD at {@code ifd} including the out-of-line values of its entries.
+         */
+        int end(int ifd) {
+            int count = int16(ifd);
+            int end = ifd + 2 + count * 12 + 4;
+            for (int i = 0; i < count; i++) {
+                int entry = ifd + 2 + i * 12;
+                int type = int16(entry + 2);
+                long size = (type < TIFF_TYPE_SIZES.length ? TIFF_TYPE_SIZES[type] : 1)
+                        * (int32(entry + 4) & 0xffffffffL);
+                if (size > 4) {
+                    end = (int) Math.max(end, Math.min(data.length, (int32(entry + 8) & 0xffffffffL) + size));
+                }
+            }
+            return end;
+        }
+
+        private void checkRange(int offset, int length) {
+            if (offset < 0 || offset + length > data.length) {
+                throw new IndexOutOfBoundsException("Offset " + offset + " outside of EXIF data");
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.photowatermarkapp.service.export;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Input files of one export job. While an upload is still streaming the list grows as parts arrive; it is sealed
+ * once the last file is known, after which no more files can be added.
+ */
+public class JobInputs {
+
+    private final List<SourceFile> files = new ArrayList<>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final Path stagingDirectory;
+    /** Files that already have a result from before a restart. */
+    private final BitSet completed = new BitSet();
+    private boolean sealed;
+
+    public JobInputs(Path stagingDirectory) {
+        this.stagingDirectory = stagingDirectory;
+    }
+
+    public static JobInputs of(List<SourceFile> files, Path stagingDirectory) {
+        JobInputs inputs = new JobInputs(stagingDirectory);
+        inputs.files.addAll(files);
+        inputs.sealed = true;
+        return inputs;
+    }
+
+    /**
+     * Inputs of a job continued after a restart, still open for files found by walking its directories again.
+     * The files at the {@code completed} indexes are not exported again.
+     */
+    public static JobInputs resumed(List<SourceFile> files, Path stagingDirectory, BitSet completed) {
+        JobInputs inputs = new JobInputs(stagingDirectory);
+        inputs.files.addAll(files);
+        inputs.completed.or(completed);
+        return inputs;
+    }
+
+    /**
+     * Directory owned by the job that holds its uploaded files, or {@code null} when files are read in place.
+     */
+    public Path getStagingDirectory() {
+        return stagingDirectory;
+    }
+
+    /**
+     * Appends a file and returns its index, or {@code -1} when the inputs are already sealed.
+     */
+    public int add(SourceFile file) {
+        int index;
+        synchronized (this) {
+            if (sealed) {
+                return -1;
+            }
+            files.add(file);
+            index = files.size() - 1;
+        }
+        listeners.forEach(Runnable::run);
+        return index;
+    }
+
+    public void seal() {
+        synchronized (this) {
+            if (sealed) {
+                return;
+            }
+            sealed = true;
+        }
+        listeners.forEach(Runnable::run);
+    }
+
+    public synchronized boolean isSealed() {
+        return sealed;
+    }
+
+    public synchronized int size() {
+        return files.size();
+    }
+
+    public synchronized SourceFile get(int index) {
+        return files.get(index);
+    }
+
+    /**
+     * The first index from {@code index} on whose file still has to be exported. May be {@link #size()}.
+     */
+    public synchronized int nextPending(int index) {
+        return Math.min(completed.nextClearBit(index), Math.max(index, files.size()));
+    }
+
+    /**
+     * Registers a callback invoked after every added file and after sealing.
+     */
+    public void onChange(Runnable listener) {
+        listeners.add(listener);
+    }
+}
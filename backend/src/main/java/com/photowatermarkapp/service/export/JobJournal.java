@@ -0,0 +1,258 @@
+package com.photowatermarkapp.service.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.photowatermarkapp.model.export.ExportFileResult;
+import com.photowatermarkapp.model.export.ExportRequest;
+import com.photowatermarkapp.model.export.LocalExportRequest;
+
+/**
+ * Append-only record of one export job: the request, its inputs in order, the output name reserved for each file
+ * and every result. Records are written through as they happen, which is enough to survive the process dying, and
+ * forced to disk in batches by {@link #sync()}. After a restart {@link #read} replays the file so that the job can
+ * continue with the files that have no result yet. The journal is deleted once the job has finished.
+ */
+public final class JobJournal implements Closeable {
+
+    public static final String SUFFIX = ".jsonl";
+
+    private static final Logger log = LoggerFactory.getLogger(JobJournal.class);
+
+    /** How the inputs of the job were submitted, which decides how an interrupted job is continued. */
+    public enum Kind {
+        /** Uploaded in one request and staged before the job started. */
+        UPLOAD,
+        /** Streamed; files that had not arrived at the time of the restart are lost with the connection. */
+        STREAM,
+        /** Read in place; directories that were still being walked are walked again. */
+        LOCAL
+    }
+
+    /**
+     * State of a job as far as its journal got. {@code outputs} and {@code results} are keyed by input index.
+     */
+    public record Replay(String jobId, Kind kind, ExportRequest request, Path outputDir, List<SourceFile> inputs,
+            boolean sealed, Map<Integer, String> outputs, Map<Integer, ExportFileResult> results, long length) {
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ObjectMapper mapper;
+    private int journaledInputs;
+    private boolean journaledSeal;
+    private boolean dirty;
+    private boolean closed;
+
+    private JobJournal(Path file, FileChannel channel, ObjectMapper mapper) {
+        this.file = file;
+        this.channel = channel;
+        this.mapper = mapper;
+    }
+
+    public static JobJournal create(Path directory, String jobId, Kind kind, ExportRequest request, Path outputDir,
+            ObjectMapper mapper) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(jobId + SUFFIX);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        JobJournal journal = new JobJournal(file, channel, mapper);
+        ObjectNode record = journal.record("job");
+        record.put("id", jobId);
+        record.put("kind", kind.name());
+        record.put("outputDir", outputDir.toString());
+        record.set("request", mapper.valueToTree(request));
+        try {
+            journal.append(record);
+            journal.sync();
+        } catch (IOException ex) {
+            journal.discard();
+            throw ex;
+        }
+        return journal;
+    }
+
+    /**
+     * Continues the journal a {@link Replay} was read from, dropping a last record that was only partly written.
+     */
+    public static JobJournal resume(Path file, Replay replay, ObjectMapper mapper) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        channel.truncate(replay.length());
+        channel.position(replay.length());
+        JobJournal journal = new JobJournal(file, channel, mapper);
+        journal.journaledInputs = replay.inputs().size();
+        journal.journaledSeal = replay.sealed();
+        return journal;
+    }
+
+    public static Replay read(Path file, ObjectMapper mapper) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        String jobId = null;
+        Kind kind = null;
+        ExportRequest request = null;
+        Path outputDir = null;
+        List<SourceFile> inputs = new ArrayList<>();
+        boolean sealed = false;
+        Map<Integer, String> outputs = new HashMap<>();
+        Map<Integer, ExportFileResult> results = new HashMap<>();
+        int start = 0;
+        for (int end = 0; end < data.length; end++) {
+            if (data[end] != '\n') {
+                continue;
+            }
+            JsonNode record;
+            try {
+                record = mapper.readTree(data, start, end - start);
+            } catch (JsonProcessingException ex) {
+                log.warn("Ignoring unreadable record in export journal {}", file);
+                start = end + 1;
+                continue;
+            }
+            start = end + 1;
+            switch (record.path("type").asText()) {
+                case "job" -> {
+                    jobId = record.path("id").asText();
+                    kind = Kind.valueOf(record.path("kind").asText());
+                    outputDir = Path.of(record.path("outputDir").asText());
+                    Class<? extends ExportRequest> type = kind == Kind.LOCAL ? LocalExportRequest.class
+                            : ExportRequest.class;
+                    request = mapper.treeToValue(record.get("request"), type);
+                }
+                case "input" -> {
+                    // Inputs are journaled in order, so only a suffix can be missing.
+                    if (record.path("index").asInt() == inputs.size()) {
+                        inputs.add(new SourceFile(record.path("name").asText(),
+                                Path.of(record.path("path").asText())));
+                    }
+                }
+                case "sealed" -> sealed = true;
+                case "output" -> outputs.put(record.path("index").asInt(), record.path("name").asText());
+                case "result" -> results.put(record.path("index").asInt(),
+                        mapper.treeToValue(record.get("result"), ExportFileResult.class));
+                default -> log.warn("Ignoring unknown record in export journal {}", file);
+            }
+        }
+        if (request == null) {
+            throw new IOException("Export journal " + file + " does not describe a job");
+        }
+        // Results of files whose input record was lost cannot be placed.
+        results.keySet().removeIf(index -> index >= inputs.size());
+        return new Replay(jobId, kind, request, outputDir, inputs, sealed, outputs, results, start);
+    }
+
+    /**
+     * Journals the files added to {@code inputs} since the last call, and the seal once it happened.
+     */
+    public synchronized void recordInputs(JobInputs inputs) {
+        boolean sealed = inputs.isSealed();
+        int size = inputs.size();
+        for (; journaledInputs < size; journaledInputs++) {
+            SourceFile input = inputs.get(journaledInputs);
+            ObjectNode record = record("input");
+            record.put("index", journaledInputs);
+            record.put("name", input.name());
+            record.put("path", input.path().toString());
+            appendQuietly(record);
+        }
+        if (sealed && !journaledSeal) {
+            journaledSeal = true;
+            appendQuietly(record("sealed"));
+        }
+    }
+
+    /**
+     * Journals the output file reserved for the input at {@code index}, so that a restart can remove what an
+     * interrupted attempt left there.
+     */
+    public synchronized void recordOutput(int index, String name) {
+        ObjectNode record = record("output");
+        record.put("index", index);
+        record.put("name", name);
+        appendQuietly(record);
+    }
+
+    public synchronized void recordResult(int index, ExportFileResult result) {
+        ObjectNode record = record("result");
+        record.put("index", index);
+        record.set("result", mapper.valueToTree(result));
+        appendQuietly(record);
+    }
+
+    /**
+     * Forces the records written since the last call to disk.
+     */
+    public synchronized void sync() throws IOException {
+        if (dirty && !closed) {
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    /**
+     * Syncs and closes the journal but keeps it, so the job is resumed on the next start. Later records are dropped.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        sync();
+        closed = true;
+        channel.close();
+    }
+
+    /**
+     * Closes and deletes the journal of a finished job. Does nothing once the journal was {@linkplain #close()
+     * closed}.
+     */
+    public synchronized void discard() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    private ObjectNode record(String type) {
+        ObjectNode record = mapper.createObjectNode();
+        record.put("type", type);
+        return record;
+    }
+
+    private void appendQuietly(ObjectNode record) {
+        try {
+            append(record);
+        } catch (IOException ex) {
+            log.warn("Failed to write export journal {}: {}", file, ex.getMessage());
+        }
+    }
+
+    private void append(ObjectNode record) throws IOException {
+        if (closed) {
+            return;
+        }
+        byte[] line = mapper.writeValueAsString(record).concat("\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        dirty = true;
+    }
+}
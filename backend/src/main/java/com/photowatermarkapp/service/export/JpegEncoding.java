@@ -0,0 +1,128 @@
+package com.photowatermarkapp.service.export;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Encoder options of a JPEG export, resolved from a named preset plus the explicit settings of the export.
+ */
+public record JpegEncoding(Preset preset, int quality, boolean optimizedHuffman, boolean progressive,
+        boolean chromaSubsampled) {
+
+    private static final String NATIVE_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    public enum Preset {
+        /** Standard Huffman tables and a single baseline scan: the quickest encode. */
+        FAST,
+        /** Huffman tables optimized for the image, at the cost of a second pass over the coefficients. */
+        BALANCED,
+        /** Optimized tables and progressive scans: the smallest files, slowest to encode. */
+        SMALLEST;
+
+        public static Preset parse(String value) {
+            if (value == null || value.isBlank()) {
+                return BALANCED;
+            }
+            return switch (value.trim().toLowerCase(Locale.ROOT)) {
+                case "fast" -> FAST;
+                case "smallest" -> SMALLEST;
+                default -> BALANCED;
+            };
+        }
+    }
+
+    /**
+     * {@code chromaSubsampling} is "4:2:0" or "4:4:4"; anything else keeps 4:2:0, which all presets use.
+     */
+    public static JpegEncoding of(String preset, int quality, String chromaSubsampling) {
+        Preset resolved = Preset.parse(preset);
+        boolean subsampled = chromaSubsampling == null || !"4:4:4".equals(chromaSubsampling.trim());
+        return new JpegEncoding(resolved, quality, resolved != Preset.FAST, resolved == Preset.SMALLEST, subsampled);
+    }
+
+    public String chromaSubsampling() {
+        return chromaSubsampled ? "4:2:0" : "4:4:4";
+    }
+
+    /**
+     * Whether a coefficient-domain transcode, which writes a single sequential scan, satisfies these options.
+     */
+    public boolean allowsTranscode() {
+        return !progressive;
+    }
+
+    public void write(BufferedImage image, ImageOutputStream output) throws IOException {
+        write(image, output, List.of());
+    }
+
+    /**
+     * Writes {@code image} with {@code segments}, complete APPn marker segments, placed after the JFIF header.
+     */
+    public void write(BufferedImage image, ImageOutputStream output, List<byte[]> segments) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No writer available for format: jpeg");
+        }
+        ImageWriter writer = writers.next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality / 100f);
+            }
+            if (param instanceof JPEGImageWriteParam jpegParam) {
+                jpegParam.setOptimizeHuffmanTables(optimizedHuffman);
+            }
+            if (param.canWriteProgressive()) {
+                param.setProgressiveMode(progressive ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+            }
+            IIOMetadata metadata = chromaSubsampled ? null : fullChromaMetadata(writer, image, param);
+            JpegSegments.Injector injector = segments.isEmpty() ? null : JpegSegments.injecting(output, segments);
+            writer.setOutput(injector != null ? injector : output);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+            if (injector != null) {
+                injector.complete();
+            }
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Default metadata of the image with every component sampled 1x1. Returns {@code null}, and thereby the writer's
+     * 4:2:0 default, when the writer does not use the JDK metadata format.
+     */
+    private static IIOMetadata fullChromaMetadata(ImageWriter writer, BufferedImage image, ImageWriteParam param)
+            throws IIOInvalidTreeException {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+        if (metadata == null || !NATIVE_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+            return null;
+        }
+        Node tree = metadata.getAsTree(NATIVE_FORMAT);
+        NodeList components = ((Element) tree).getElementsByTagName("componentSpec");
+        for (int i = 0; i < components.getLength(); i++) {
+            Element component = (Element) components.item(i);
+            component.setAttribute("HsamplingFactor", "1");
+            component.setAttribute("VsamplingFactor", "1");
+        }
+        metadata.setFromTree(NATIVE_FORMAT, tree);
+        return metadata;
+    }
+}
@@ -0,0 +1,168 @@
+package com.photowatermarkapp.service.export;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * Inserts raw marker segments into JPEG data right after SOI, or after the JFIF APP0 segment when there is one, so
+ * that metadata can be added to an encoded file without going through {@link javax.imageio.metadata.IIOMetadata}.
+ */
+public final class JpegSegments {
+
+    private static final int HEAD_LENGTH = 6;
+
+    private JpegSegments() {
+    }
+
+    /**
+     * Returns a copy of {@code jpeg} with {@code segments} (each a complete segment including marker and length)
+     * inserted.
+     */
+    public static byte[] insert(byte[] jpeg, List<byte[]> segments) {
+        if (segments.isEmpty()) {
+            return jpeg;
+        }
+        int offset = insertionOffset(jpeg, Math.min(jpeg.length, HEAD_LENGTH));
+        if (offset < 0 || offset > jpeg.length) {
+            throw new IllegalArgumentException("Not a JPEG stream");
+        }
+        int total = jpeg.length;
+        for (byte[] segment : segments) {
+            total += segment.length;
+        }
+        byte[] result = new byte[total];
+        System.arraycopy(jpeg, 0, result, 0, offset);
+        int position = offset;
+        for (byte[] segment : segments) {
+            System.arraycopy(segment, 0, result, position, segment.length);
+            position += segment.length;
+        }
+        System.arraycopy(jpeg, offset, result, position, jpeg.length - offset);
+        return result;
+    }
+
+    /**
+     * Wraps {@code target} so that {@code segments} end up in the JPEG stream an image writer writes to the returned
+     * stream. The writer must write sequentially; {@link Injector#complete()} has to be called once it is done.
+     */
+    public static Injector injecting(ImageOutputStream target, List<byte[]> segments) {
+        return new Injector(target, segments);
+    }
+
+    /**
+     * Number of leading bytes that stay in front of the inserted segments, or -1 when {@code length} bytes of
+     * {@code head} are not enough to tell.
+     */
+    private static int insertionOffset(byte[] head, int length) {
+        if (length < 4) {
+            return -1;
+        }
+        if ((head[0] & 0xff) != 0xFF || (head[1] & 0xff) != 0xD8) {
+            throw new IllegalArgumentException("Not a JPEG stream");
+        }
+        if ((head[2] & 0xff) != 0xFF || (head[3] & 0xff) != 0xE0) {
+            return 2;
+        }
+        if (length < HEAD_LENGTH) {
+            return -1;
+        }
+        return 4 + (((head[4] & 0xff) << 8) | (head[5] & 0xff));
+    }
+
+    public static final class Injector extends ImageOutputStreamImpl {
+
+        private final ImageOutputStream target;
+        private final List<byte[]> segments;
+        private final byte[] head = new byte[HEAD_LENGTH];
+        private int headLength;
+        /** Bytes still to pass through before the segments go in; -1 until known. */
+        private long remaining = -1;
+        private boolean injected;
+
+        private Injector(ImageOutputStream target, List<byte[]> segments) {
+            this.target = target;
+            this.segments = segments;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            flushBits();
+            streamPos += len;
+            while (len > 0 && !injected) {
+                if (remaining < 0) {
+                    int count = Math.min(len, HEAD_LENGTH - headLength);
+                    System.arraycopy(b, off, head, headLength, count);
+                    headLength += count;
+                    off += count;
+                    len -= count;
+                    int offset = insertionOffset(head, headLength);
+                    if (offset < 0) {
+                        continue;
+                    }
+                    int passed = Math.min(offset, headLength);
+                    target.write(head, 0, passed);
+                    remaining = offset - passed;
+                    if (remaining == 0) {
+                        inject();
+                        target.write(head, passed, headLength - passed);
+                    }
+                } else {
+                    int count = (int) Math.min(len, remaining);
+                    target.write(b, off, count);
+                    off += count;
+                    len -= count;
+                    remaining -= count;
+                    if (remaining == 0) {
+                        inject();
+                    }
+                }
+            }
+            if (len > 0) {
+                target.write(b, off, len);
+            }
+        }
+
+        /**
+         * Writes out anything still held back, such as the head of a stream too short to hold a JFIF segment.
+         */
+        public void complete() throws IOException {
+            if (!injected && remaining < 0) {
+                target.write(head, 0, headLength);
+                headLength = 0;
+            }
+        }
+
+        private void inject() throws IOException {
+            for (byte[] segment : segments) {
+                target.write(segment);
+            }
+            injected = true;
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            if (pos != streamPos) {
+                throw new IOException("JPEG segment injection requires sequential writes");
+            }
+            super.seek(pos);
+        }
+
+        @Override
+        public int read() throws IOException {
+            throw new IOException("Write-only stream");
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            throw new IOException("Write-only stream");
+        }
+    }
+}
@@ -0,0 +1,1167 @@
+package com.photowatermarkapp.service.export;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.plugins.jpeg.JPEGQTable;
+
+/**
+ * Re-encodes a baseline JPEG in the coefficient domain. Every 8x8 block keeps its original quantized DCT
+ * coefficients unless the overlay actually paints into it; only those blocks are decoded to pixels, blended and
+ * quantized again with the source tables. Untouched blocks therefore suffer no generation loss and cost only the
+ * entropy decode and encode.
+ * <p>
+ * Supported are 8-bit sequential Huffman files (SOF0/SOF1) with a single interleaved scan, one (gray) or three
+ * (YCbCr) components and integral sampling factors. {@link #parse(byte[])} returns {@code null} for anything else.
+ * <p>
+ * The output keeps the JFIF and Adobe segments and the ICC profile of the source, which describe how to read the
+ * coefficients; all other metadata is dropped.
+ */
+public final class JpegTranscoder {
+
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int DQT = 0xDB;
+    private static final int DHT = 0xC4;
+    private static final int DRI = 0xDD;
+    private static final int APP0 = 0xE0;
+    private static final int APP2 = 0xE2;
+    private static final int APP14 = 0xEE;
+
+    private static final byte[] ICC_HEADER = "ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int[] NATURAL_ORDER = buildNaturalOrder();
+    private static final double[][] DCT = buildDctMatrix();
+
+    private final byte[] data;
+    private final List<byte[]> keptSegments;
+    private final int width;
+    private final int height;
+    private final int[][] quantTables;
+    private final Component[] components;
+    private final int maxH;
+    private final int maxV;
+    private final int restartInterval;
+    private final int scanStart;
+    private final int scanEnd;
+
+    private static final class Component {
+        private int h;
+        private int v;
+        private int quantTable;
+        private HuffmanTable dc;
+        private HuffmanTable ac;
+    }
+
+    private JpegTranscoder(byte[] data, List<byte[]> keptSegments, int width, int height, int[][] quantTables,
+            Component[] components, int restartInterval, int scanStart, int scanEnd) {
+        this.data = data;
+        this.keptSegments = keptSegments;
+        this.width = width;
+        this.height = height;
+        this.quantTables = quantTables;
+        this.components = components;
+        this.restartInterval = restartInterval;
+        this.scanStart = scanStart;
+        this.scanEnd = scanEnd;
+        int h = 1;
+        int v = 1;
+        for (Component component : components) {
+            h = Math.max(h, component.h);
+            v = Math.max(v, component.v);
+        }
+        this.maxH = h;
+        this.maxV = v;
+    }
+
+    /**
+     * Reads the headers of {@code data}. Returns {@code null} when the file uses features this transcoder does not
+     * handle, in which case the caller should fall back to a full decode.
+     */
+    public static JpegTranscoder parse(byte[] data) throws IOException {
+        try {
+            return parseSegments(data);
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("Corrupt JPEG header", ex);
+        }
+    }
+
+    private static JpegTranscoder parseSegments(byte[] data) throws IOException {
+        if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != SOI) {
+            return null;
+        }
+        List<byte[]> kept = new ArrayList<>();
+        int[][] quantTables = new int[4][];
+        HuffmanTable[][] huffmanTables = new HuffmanTable[2][4];
+        int[] componentIds = null;
+        Component[] components = null;
+        int width = 0;
+        int height = 0;
+        int restartInterval = 0;
+        int adobeTransform = -1;
+        int pos = 2;
+        while (pos + 4 <= data.length) {
+            if ((data[pos] & 0xFF) != 0xFF) {
+                throw new IOException("Corrupt JPEG header");
+            }
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            int length = ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            int segmentStart = pos;
+            int payload = pos + 4;
+            int segmentEnd = pos + 2 + length;
+            if (length < 2 || segmentEnd > data.length) {
+                throw new IOException("Corrupt JPEG header");
+            }
+            pos = segmentEnd;
+
+            if (marker == 0xC0 || marker == 0xC1) {
+                if (data[payload] != 8) {
+                    return null;
+                }
+                height = ((data[payload + 1] & 0xFF) << 8) | (data[payload + 2] & 0xFF);
+                width = ((data[payload + 3] & 0xFF) << 8) | (data[payload + 4] & 0xFF);
+                int count = data[payload + 5] & 0xFF;
+                if (height == 0 || width == 0 || (count != 1 && count != 3)) {
+                    return null;
+                }
+                componentIds = new int[count];
+                components = new Component[count];
+                for (int i = 0; i < count; i++) {
+                    int offset = payload + 6 + i * 3;
+                    Component component = new Component();
+                    componentIds[i] = data[offset] & 0xFF;
+                    component.h = count == 1 ? 1 : (data[offset + 1] & 0xFF) >> 4;
+                    component.v = count == 1 ? 1 : data[offset + 1] & 0x0F;
+                    component.quantTable = data[offset + 2] & 0x03;
+                    if (component.h < 1 || component.v < 1) {
+                        return null;
+                    }
+                    components[i] = component;
+                }
+                kept.add(Arrays.copyOfRange(data, segmentStart, segmentEnd));
+            } else if (marker >= 0xC2 && marker <= 0xCF && marker != DHT && marker != 0xC8) {
+                // Progressive, lossless and arithmetic coded files.
+                return null;
+            } else if (marker == DQT) {
+                for (int offset = payload; offset < segmentEnd;) {
+                    int precision = (data[offset] & 0xFF) >> 4;
+                    int id = data[offset] & 0x03;
+                    offset++;
+                    int[] table = new int[64];
+                    for (int k = 0; k < 64; k++) {
+                        table[k] = precision == 0 ? data[offset++] & 0xFF
+                                : ((data[offset++] & 0xFF) << 8) | (data[offset++] & 0xFF);
+                    }
+                    quantTables[id] = table;
+                }
+                kept.add(Arrays.copyOfRange(data, segmentStart, segmentEnd));
+            } else if (marker == DHT) {
+                for (int offset = payload; offset < segmentEnd;) {
+                    int tableClass = (data[offset] & 0xFF) >> 4;
+                    int id = data[offset] & 0x03;
+                    offset++;
+                    short[] lengths = new short[16];
+                    int total = 0;
+                    for (int i = 0; i < 16; i++) {
+                        lengths[i] = (short) (data[offset + i] & 0xFF);
+                        total += lengths[i];
+                    }
+                    offset += 16;
+                    short[] values = new short[total];
+                    for (int i = 0; i < total; i++) {
+                        values[i] = (short) (data[offset + i] & 0xFF);
+                    }
+                    offset += total;
+                    if (tableClass > 1) {
+                        return null;
+                    }
+                    huffmanTables[tableClass][id] = new HuffmanTable(lengths, values);
+                }
+            } else if (marker == DRI) {
+                restartInterval = ((data[payload] & 0xFF) << 8) | (data[payload + 1] & 0xFF);
+            } else if (marker == APP0 || marker == APP14) {
+                if (marker == APP14 && length >= 14 && data[payload] == 'A') {
+                    adobeTransform = data[payload + 11] & 0xFF;
+                }
+                kept.add(Arrays.copyOfRange(data, segmentStart, segmentEnd));
+            } else if (marker == APP2 && length >= 2 + ICC_HEADER.length
+                    && Arrays.equals(data, payload, payload + ICC_HEADER.length, ICC_HEADER, 0, ICC_HEADER.length)) {
+                // The coefficients stay in the source's colour space, so its profile has to stay with them.
+                kept.add(Arrays.copyOfRange(data, segmentStart, segmentEnd));
+            } else if (marker == SOS) {
+                if (components == null) {
+                    return null;
+                }
+                int count = data[payload] & 0xFF;
+                if (count != components.length) {
+                    return null;
+                }
+                if (count == 3 && (adobeTransform == 0
+                        || (componentIds[0] == 'R' && componentIds[1] == 'G' && componentIds[2] == 'B'))) {
+                    // RGB encoded files are not YCbCr.
+                    return null;
+                }
+                // Blocks of an interleaved scan follow the component order of the scan header.
+                Component[] scanComponents = new Component[count];
+                for (int i = 0; i < count; i++) {
+                    int selector = data[payload + 1 + i * 2] & 0xFF;
+                    int tables = data[payload + 2 + i * 2] & 0xFF;
+                    int index = indexOf(componentIds, selector);
+                    if (index < 0 || scanComponents[i] != null) {
+                        return null;
+                    }
+                    Component component = components[index];
+                    component.dc = huffmanTables[0][tables >> 4];
+                    component.ac = huffmanTables[1][tables & 0x03];
+                    if (component.dc == null || component.ac == null || quantTables[component.quantTable] == null) {
+                        return null;
+                    }
+                    scanComponents[i] = component;
+                }
+                int spectral = payload + 1 + count * 2;
+                if (data[spectral] != 0 || (data[spectral + 1] & 0xFF) != 63 || data[spectral + 2] != 0) {
+                    return null;
+                }
+                int scanEnd = findScanEnd(data, segmentEnd);
+                if (scanEnd < 0) {
+                    // More than one scan or no EOI.
+                    return null;
+                }
+                if (!checkSampling(scanComponents)) {
+                    return null;
+                }
+                kept.add(Arrays.copyOfRange(data, segmentStart, segmentEnd));
+                return new JpegTranscoder(data, kept, width, height, quantTables, scanComponents, restartInterval,
+                        segmentEnd, scanEnd);
+            } else if (marker == EOI) {
+                return null;
+            }
+            // Other APPn and COM segments are dropped, like the metadata of a regular re-encode.
+        }
+        return null;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Approximate IJG quality (1-100) the luminance quantization table corresponds to.
+     */
+    public int estimateQuality() {
+        int[] table = quantTables[components[0].quantTable];
+        int[] reference = JPEGQTable.K1Luminance.getTable();
+        long sum = 0;
+        long referenceSum = 0;
+        for (int k = 0; k < 64; k++) {
+            sum += table[k];
+            referenceSum += reference[k];
+        }
+        double scale = sum * 100.0 / referenceSum;
+        double quality = scale <= 100 ? (200 - scale) / 2 : 5000 / scale;
+        return (int) Math.round(Math.max(1, Math.min(100, quality)));
+    }
+
+    /**
+     * Writes the transcoded file. {@code overlay} (non-premultiplied ARGB, may be {@code null}) is blended onto the
+     * image with its top-left corner at ({@code overlayX}, {@code overlayY}).
+     */
+    public byte[] transcode(BufferedImage overlay, int overlayX, int overlayY) throws IOException {
+        McuBlender blender = null;
+        if (overlay != null) {
+            if (overlay.getType() != BufferedImage.TYPE_INT_ARGB) {
+                throw new IllegalArgumentException("Overlay must be TYPE_INT_ARGB");
+            }
+            int[] pixels = ((DataBufferInt) overlay.getRaster().getDataBuffer()).getData();
+            blender = new McuBlender(pixels, overlayX, overlayY, overlay.getWidth(), overlay.getHeight());
+        }
+
+        HuffmanTable[] dcOut = new HuffmanTable[components.length];
+        HuffmanTable[] acOut = new HuffmanTable[components.length];
+        Map<Integer, int[][][]> blendedMcus = new HashMap<>();
+        boolean complete = true;
+        for (Component component : components) {
+            complete &= component.dc.isComplete(false) && component.ac.isComplete(true);
+        }
+        if (blender == null || complete) {
+            // Source tables can encode every block; nothing needs to be counted up front.
+            for (int c = 0; c < components.length; c++) {
+                dcOut[c] = components[c].dc;
+                acOut[c] = components[c].ac;
+            }
+        } else {
+            // First pass: blend and count the symbols the output needs. Source tables that lack any of them (such
+            // as optimized tables) are replaced by tables built from these counts.
+            Map<HuffmanTable, long[]> frequencies = new IdentityHashMap<>();
+            for (Component component : components) {
+                frequencies.computeIfAbsent(component.dc, table -> new long[257]);
+                frequencies.computeIfAbsent(component.ac, table -> new long[257]);
+            }
+            scan(blender, blendedMcus, null, null, null, frequencies);
+            Map<HuffmanTable, HuffmanTable> replacements = new IdentityHashMap<>();
+            frequencies.forEach((table, counts) -> replacements.put(table,
+                    table.canEncode(counts) ? table : HuffmanTable.optimal(counts)));
+            for (int c = 0; c < components.length; c++) {
+                dcOut[c] = replacements.get(components[c].dc);
+                acOut[c] = replacements.get(components[c].ac);
+            }
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(0xFF);
+        header.write(SOI);
+        for (byte[] segment : keptSegments) {
+            if ((segment[1] & 0xFF) == SOS) {
+                segment = writeHuffmanTables(header, segment, dcOut, acOut);
+                if (restartInterval > 0) {
+                    header.write(new byte[] { (byte) 0xFF, (byte) DRI, 0, 4, (byte) (restartInterval >> 8),
+                            (byte) restartInterval });
+                }
+            }
+            header.write(segment);
+        }
+
+        BitWriter out = new BitWriter(Math.max(1024, data.length + data.length / 8));
+        out.raw(header.toByteArray());
+        scan(blender, blendedMcus, out, dcOut, acOut, null);
+        out.flush();
+        out.raw(new byte[] { (byte) 0xFF, (byte) EOI });
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the whole scan, blending the overlay into the MCUs it paints. With {@code out} set, every block is
+     * encoded with the given tables; otherwise the symbols are only counted into {@code frequencies}. Blended MCUs
+     * are remembered in {@code blendedMcus} so the second pass does not blend them again.
+     */
+    private void scan(McuBlender blender, Map<Integer, int[][][]> blendedMcus, BitWriter out, HuffmanTable[] dcOut,
+            HuffmanTable[] acOut, Map<HuffmanTable, long[]> frequencies) throws IOException {
+        BitReader in = new BitReader(data, scanStart, scanEnd);
+        int mcuWidth = 8 * maxH;
+        int mcuHeight = 8 * maxV;
+        int mcusX = (width + mcuWidth - 1) / mcuWidth;
+        int mcusY = (height + mcuHeight - 1) / mcuHeight;
+        int[][][] blocks = new int[components.length][][];
+        for (int c = 0; c < components.length; c++) {
+            blocks[c] = new int[components[c].h * components[c].v][64];
+        }
+        int[] inPredictors = new int[components.length];
+        int[] outPredictors = new int[components.length];
+
+        int mcuIndex = 0;
+        int restartIndex = 0;
+        for (int mcuY = 0; mcuY < mcusY; mcuY++) {
+            for (int mcuX = 0; mcuX < mcusX; mcuX++) {
+                if (restartInterval > 0 && mcuIndex > 0 && mcuIndex % restartInterval == 0) {
+                    in.restart();
+                    if (out != null) {
+                        out.restart(restartIndex++ & 7);
+                    }
+                    Arrays.fill(inPredictors, 0);
+                    Arrays.fill(outPredictors, 0);
+                }
+                for (int c = 0; c < components.length; c++) {
+                    for (int[] block : blocks[c]) {
+                        inPredictors[c] = decodeBlock(in, components[c], block, inPredictors[c]);
+                    }
+                }
+                int[][][] mcu = blocks;
+                if (blendedMcus.containsKey(mcuIndex)) {
+                    mcu = blendedMcus.get(mcuIndex);
+                } else if (blender != null && blender.blend(blocks, mcuX * mcuWidth, mcuY * mcuHeight)
+                        && out == null) {
+                    int[][][] copy = new int[blocks.length][][];
+                    for (int c = 0; c < blocks.length; c++) {
+                        copy[c] = new int[blocks[c].length][];
+                        for (int b = 0; b < blocks[c].length; b++) {
+                            copy[c][b] = blocks[c][b].clone();
+                        }
+                    }
+                    blendedMcus.put(mcuIndex, copy);
+                }
+                for (int c = 0; c < components.length; c++) {
+                    for (int[] block : mcu[c]) {
+                        outPredictors[c] = out != null
+                                ? encodeBlock(out, dcOut[c], acOut[c], block, outPredictors[c])
+                                : countBlock(frequencies.get(components[c].dc), frequencies.get(components[c].ac),
+                                        block, outPredictors[c]);
+                    }
+                }
+                mcuIndex++;
+            }
+        }
+    }
+
+    /**
+     * Writes one DHT segment with the output tables and returns the SOS header rewritten to their slots.
+     */
+    private byte[] writeHuffmanTables(ByteArrayOutputStream header, byte[] sos, HuffmanTable[] dcOut,
+            HuffmanTable[] acOut) {
+        int[] dcSlots = assignSlots(dcOut);
+        int[] acSlots = assignSlots(acOut);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int tableClass = 0; tableClass < 2; tableClass++) {
+            HuffmanTable[] tables = tableClass == 0 ? dcOut : acOut;
+            int[] slots = tableClass == 0 ? dcSlots : acSlots;
+            boolean[] written = new boolean[4];
+            for (int c = 0; c < tables.length; c++) {
+                if (written[slots[c]]) {
+                    continue;
+                }
+                written[slots[c]] = true;
+                body.write((tableClass << 4) | slots[c]);
+                for (short length : tables[c].lengths) {
+                    body.write(length);
+                }
+                for (short value : tables[c].values) {
+                    body.write(value);
+                }
+            }
+        }
+        int length = body.size() + 2;
+        header.write(0xFF);
+        header.write(DHT);
+        header.write(length >> 8);
+        header.write(length);
+        header.writeBytes(body.toByteArray());
+
+        byte[] rewritten = sos.clone();
+        for (int i = 0; i < components.length; i++) {
+            rewritten[6 + i * 2] = (byte) ((dcSlots[i] << 4) | acSlots[i]);
+        }
+        return rewritten;
+    }
+
+    /**
+     * Components with equal tables share a slot; at most three components means at most three slots.
+     */
+    private static int[] assignSlots(HuffmanTable[] tables) {
+        List<HuffmanTable> distinct = new ArrayList<>();
+        int[] slots = new int[tables.length];
+        for (int c = 0; c < tables.length; c++) {
+            int slot = distinct.indexOf(tables[c]);
+            if (slot < 0) {
+                distinct.add(tables[c]);
+                slot = distinct.size() - 1;
+            }
+            slots[c] = slot;
+        }
+        return slots;
+    }
+
+    private static int decodeBlock(BitReader in, Component component, int[] block, int predictor)
+            throws IOException {
+        Arrays.fill(block, 0);
+        int size = component.dc.decode(in);
+        int dc = predictor + (size == 0 ? 0 : extend(in.bits(size), size));
+        block[0] = dc;
+        for (int k = 1; k < 64;) {
+            int symbol = component.ac.decode(in);
+            int run = symbol >> 4;
+            size = symbol & 0x0F;
+            if (size == 0) {
+                if (run != 15) {
+                    break;
+                }
+                k += 16;
+                continue;
+            }
+            k += run;
+            if (k > 63) {
+                throw new IOException("Corrupt JPEG data");
+            }
+            block[k++] = extend(in.bits(size), size);
+        }
+        return dc;
+    }
+
+    private static int encodeBlock(BitWriter out, HuffmanTable dcTable, HuffmanTable acTable, int[] block,
+            int predictor) {
+        int diff = block[0] - predictor;
+        int size = magnitude(diff);
+        dcTable.encode(out, size);
+        if (size > 0) {
+            out.bits(diff < 0 ? diff - 1 : diff, size);
+        }
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int value = block[k];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                acTable.encode(out, 0xF0);
+                run -= 16;
+            }
+            size = magnitude(value);
+            acTable.encode(out, (run << 4) | size);
+            out.bits(value < 0 ? value - 1 : value, size);
+            run = 0;
+        }
+        if (run > 0) {
+            acTable.encode(out, 0x00);
+        }
+        return block[0];
+    }
+
+    private static int countBlock(long[] dcCounts, long[] acCounts, int[] block, int predictor) {
+        dcCounts[magnitude(block[0] - predictor)]++;
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            if (block[k] == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                acCounts[0xF0]++;
+                run -= 16;
+            }
+            acCounts[(run << 4) | magnitude(block[k])]++;
+            run = 0;
+        }
+        if (run > 0) {
+            acCounts[0x00]++;
+        }
+        return block[0];
+    }
+
+    private static int magnitude(int value) {
+        return value == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    private static int extend(int value, int size) {
+        return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean checkSampling(Component[] components) {
+        int maxH = 1;
+        int maxV = 1;
+        int blocksPerMcu = 0;
+        for (Component component : components) {
+            maxH = Math.max(maxH, component.h);
+            maxV = Math.max(maxV, component.v);
+            blocksPerMcu += component.h * component.v;
+        }
+        if (blocksPerMcu > 10) {
+            return false;
+        }
+        for (Component component : components) {
+            if (maxH % component.h != 0 || maxV % component.v != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the offset of the EOI marker that ends the scan starting at {@code start}, or -1 when the scan is
+     * followed by anything else.
+     */
+    private static int findScanEnd(byte[] data, int start) {
+        for (int i = start; i + 1 < data.length; i++) {
+            if ((data[i] & 0xFF) != 0xFF) {
+                continue;
+            }
+            int next = data[i + 1] & 0xFF;
+            if (next == 0x00 || next == 0xFF || (next >= 0xD0 && next <= 0xD7)) {
+                continue;
+            }
+            return next == EOI ? i : -1;
+        }
+        return -1;
+    }
+
+    private static int[] buildNaturalOrder() {
+        int[] order = new int[64];
+        int x = 0;
+        int y = 0;
+        for (int k = 0; k < 64; k++) {
+            order[k] = y * 8 + x;
+            if ((x + y) % 2 == 0) {
+                if (x == 7) {
+                    y++;
+                } else if (y == 0) {
+                    x++;
+                } else {
+                    x++;
+                    y--;
+                }
+            } else {
+                if (y == 7) {
+                    x++;
+                } else if (x == 0) {
+                    y++;
+                } else {
+                    x--;
+                    y++;
+                }
+            }
+        }
+        return order;
+    }
+
+    private static double[][] buildDctMatrix() {
+        double[][] matrix = new double[8][8];
+        for (int u = 0; u < 8; u++) {
+            double scale = u == 0 ? Math.sqrt(0.125) : 0.5;
+            for (int x = 0; x < 8; x++) {
+                matrix[u][x] = scale * Math.cos((2 * x + 1) * u * Math.PI / 16);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Decodes, blends and re-quantizes the blocks of one MCU that the overlay paints into.
+     */
+    private final class McuBlender {
+
+        private final int[] overlay;
+        private final int overlayX;
+        private final int overlayY;
+        private final int overlayWidth;
+        private final int overlayHeight;
+        private final int mcuWidth = 8 * maxH;
+        private final int mcuHeight = 8 * maxV;
+        private final double[][] samples = new double[components.length][];
+        private final double[][] blended = new double[components.length][];
+        private final boolean[] painted;
+        private final double[] scratch = new double[64];
+        private final double[] coefficients = new double[64];
+        private final double[] pixels = new double[64];
+
+        private McuBlender(int[] overlay, int overlayX, int overlayY, int overlayWidth, int overlayHeight) {
+            this.overlay = overlay;
+            this.overlayX = overlayX;
+            this.overlayY = overlayY;
+            this.overlayWidth = overlayWidth;
+            this.overlayHeight = overlayHeight;
+            for (int c = 0; c < components.length; c++) {
+                samples[c] = new double[components[c].h * components[c].v * 64];
+                blended[c] = new double[mcuWidth * mcuHeight];
+            }
+            this.painted = new boolean[mcuWidth * mcuHeight];
+        }
+
+        /**
+         * Returns {@code true} when any block of the MCU was changed.
+         */
+        private boolean blend(int[][][] blocks, int x0, int y0) {
+            int fromX = Math.max(x0, overlayX);
+            int fromY = Math.max(y0, overlayY);
+            int toX = Math.min(Math.min(x0 + mcuWidth, overlayX + overlayWidth), width);
+            int toY = Math.min(Math.min(y0 + mcuHeight, overlayY + overlayHeight), height);
+            if (fromX >= toX || fromY >= toY) {
+                return false;
+            }
+            boolean any = false;
+            Arrays.fill(painted, false);
+            for (int y = fromY; y < toY && !any; y++) {
+                for (int x = fromX; x < toX; x++) {
+                    if ((overlay[(y - overlayY) * overlayWidth + (x - overlayX)] >>> 24) != 0) {
+                        any = true;
+                        break;
+                    }
+                }
+            }
+            if (!any) {
+                return false;
+            }
+
+            for (int c = 0; c < components.length; c++) {
+                Component component = components[c];
+                int[] table = quantTables[component.quantTable];
+                for (int b = 0; b < blocks[c].length; b++) {
+                    inverseDct(blocks[c][b], table, pixels);
+                    int blockX = (b % component.h) * 8;
+                    int blockY = (b / component.h) * 8;
+                    int stride = component.h * 8;
+                    for (int i = 0; i < 64; i++) {
+                        samples[c][(blockY + i / 8) * stride + blockX + i % 8] = pixels[i];
+                    }
+                }
+                // Upsample to full MCU resolution by replication.
+                int factorX = maxH / component.h;
+                int factorY = maxV / component.v;
+                int stride = component.h * 8;
+                for (int py = 0; py < mcuHeight; py++) {
+                    for (int px = 0; px < mcuWidth; px++) {
+                        blended[c][py * mcuWidth + px] = samples[c][(py / factorY) * stride + px / factorX];
+                    }
+                }
+            }
+
+            for (int y = fromY; y < toY; y++) {
+                for (int x = fromX; x < toX; x++) {
+                    int argb = overlay[(y - overlayY) * overlayWidth + (x - overlayX)];
+                    int alpha = argb >>> 24;
+                    if (alpha == 0) {
+                        continue;
+                    }
+                    int index = (y - y0) * mcuWidth + (x - x0);
+                    painted[index] = true;
+                    blendPixel(index, argb, alpha / 255.0);
+                }
+            }
+
+            for (int c = 0; c < components.length; c++) {
+                Component component = components[c];
+                int[] table = quantTables[component.quantTable];
+                int factorX = maxH / component.h;
+                int factorY = maxV / component.v;
+                int stride = component.h * 8;
+                for (int b = 0; b < blocks[c].length; b++) {
+                    int blockX = (b % component.h) * 8;
+                    int blockY = (b / component.h) * 8;
+                    boolean changed = false;
+                    for (int py = blockY * factorY; py < (blockY + 8) * factorY && !changed; py++) {
+                        for (int px = blockX * factorX; px < (blockX + 8) * factorX; px++) {
+                            if (painted[py * mcuWidth + px]) {
+                                changed = true;
+                                break;
+                            }
+                        }
+                    }
+                    if (!changed) {
+                        continue;
+                    }
+                    for (int i = 0; i < 64; i++) {
+                        int sx = blockX + i % 8;
+                        int sy = blockY + i / 8;
+                        double sum = 0;
+                        for (int dy = 0; dy < factorY; dy++) {
+                            for (int dx = 0; dx < factorX; dx++) {
+                                int index = (sy * factorY + dy) * mcuWidth + sx * factorX + dx;
+                                sum += painted[index] ? blended[c][index] : samples[c][sy * stride + sx];
+                            }
+                        }
+                        pixels[i] = sum / (factorX * factorY);
+                    }
+                    forwardDct(pixels, table, blocks[c][b]);
+                }
+            }
+            return true;
+        }
+
+        private void blendPixel(int index, int argb, double alpha) {
+            double red = (argb >> 16) & 0xFF;
+            double green = (argb >> 8) & 0xFF;
+            double blue = argb & 0xFF;
+            if (components.length == 1) {
+                double luma = clamp(blended[0][index]);
+                double overlayLuma = 0.299 * red + 0.587 * green + 0.114 * blue;
+                blended[0][index] = luma + (overlayLuma - luma) * alpha;
+                return;
+            }
+            double luma = blended[0][index];
+            double cb = blended[1][index] - 128;
+            double cr = blended[2][index] - 128;
+            double r = clamp(luma + 1.402 * cr);
+            double g = clamp(luma - 0.344136 * cb - 0.714136 * cr);
+            double b = clamp(luma + 1.772 * cb);
+            r += (red - r) * alpha;
+            g += (green - g) * alpha;
+            b += (blue - b) * alpha;
+            blended[0][index] = 0.299 * r + 0.587 * g + 0.114 * b;
+            blended[1][index] = -0.168736 * r - 0.331264 * g + 0.5 * b + 128;
+            blended[2][index] = 0.5 * r - 0.418688 * g - 0.081312 * b + 128;
+        }
+
+        private void inverseDct(int[] block, int[] table, double[] out) {
+            Arrays.fill(coefficients, 0);
+            for (int k = 0; k < 64; k++) {
+                coefficients[NATURAL_ORDER[k]] = block[k] * (double) table[k];
+            }
+            // Rows first, then columns.
+            for (int v = 0; v < 8; v++) {
+                for (int x = 0; x < 8; x++) {
+                    double sum = 0;
+                    for (int u = 0; u < 8; u++) {
+                        sum += DCT[u][x] * coefficients[v * 8 + u];
+                    }
+                    scratch[v * 8 + x] = sum;
+                }
+            }
+            for (int y = 0; y < 8; y++) {
+                for (int x = 0; x < 8; x++) {
+                    double sum = 0;
+                    for (int v = 0; v < 8; v++) {
+                        sum += DCT[v][y] * scratch[v * 8 + x];
+                    }
+                    out[y * 8 + x] = sum + 128;
+                }
+            }
+        }
+
+        private void forwardDct(double[] in, int[] table, int[] block) {
+            for (int y = 0; y < 8; y++) {
+                for (int u = 0; u < 8; u++) {
+                    double sum = 0;
+                    for (int x = 0; x < 8; x++) {
+                        sum += DCT[u][x] * (in[y * 8 + x] - 128);
+                    }
+                    scratch[y * 8 + u] = sum;
+                }
+            }
+            for (int k = 0; k < 64; k++) {
+                int natural = NATURAL_ORDER[k];
+                int u = natural % 8;
+                int v = natural / 8;
+                double sum = 0;
+                for (int y = 0; y < 8; y++) {
+                    sum += DCT[v][y] * scratch[y * 8 + u];
+                }
+                block[k] = (int) Math.max(-1023, Math.min(1023, Math.round(sum / table[k])));
+            }
+        }
+
+        private double clamp(double value) {
+            return Math.max(0, Math.min(255, value));
+        }
+    }
+
+    private static final class HuffmanTable {
+
+        private static final int LOOKAHEAD = 9;
+
+        private final short[] lengths;
+        private final short[] values;
+        private final int[] maxCode = new int[18];
+        private final int[] valueOffset = new int[17];
+        private final int[] lookup = new int[1 << LOOKAHEAD];
+        private final int[] codes = new int[256];
+        private final int[] sizes = new int[256];
+
+        private HuffmanTable(short[] lengths, short[] values) throws IOException {
+            this.lengths = lengths;
+            this.values = values;
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= 16; length++) {
+                valueOffset[length] = index - code;
+                for (int i = 0; i < lengths[length - 1]; i++) {
+                    if (index >= values.length) {
+                        throw new IOException("Corrupt JPEG Huffman table");
+                    }
+                    int symbol = values[index] & 0xFF;
+                    codes[symbol] = code;
+                    sizes[symbol] = length;
+                    if (length <= LOOKAHEAD) {
+                        int shift = LOOKAHEAD - length;
+                        for (int fill = 0; fill < (1 << shift); fill++) {
+                            lookup[(code << shift) | fill] = (length << 8) | symbol;
+                        }
+                    }
+                    code++;
+                    index++;
+                }
+                maxCode[length] = lengths[length - 1] == 0 ? -1 : code - 1;
+                code <<= 1;
+            }
+            maxCode[17] = Integer.MAX_VALUE;
+        }
+
+        private boolean canEncode(long[] counts) {
+            for (int symbol = 0; symbol < 256; symbol++) {
+                if (counts[symbol] > 0 && sizes[symbol] == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Builds the optimal table for the symbol counts, limited to 16-bit codes (ITU T.81 Annex K.2).
+         */
+        private static HuffmanTable optimal(long[] counts) {
+            long[] frequency = Arrays.copyOf(counts, 257);
+            // Reserved pseudo-symbol so no real symbol gets the all-ones code.
+            frequency[256] = 1;
+            int[] codeSize = new int[257];
+            int[] others = new int[257];
+            Arrays.fill(others, -1);
+            while (true) {
+                int c1 = -1;
+                long v = Long.MAX_VALUE;
+                for (int i = 0; i <= 256; i++) {
+                    if (frequency[i] > 0 && frequency[i] <= v) {
+                        v = frequency[i];
+                        c1 = i;
+                    }
+                }
+                int c2 = -1;
+                v = Long.MAX_VALUE;
+                for (int i = 0; i <= 256; i++) {
+                    if (frequency[i] > 0 && frequency[i] <= v && i != c1) {
+                        v = frequency[i];
+                        c2 = i;
+                    }
+                }
+                if (c2 < 0) {
+                    break;
+                }
+                frequency[c1] += frequency[c2];
+                frequency[c2] = 0;
+                codeSize[c1]++;
+                while (others[c1] >= 0) {
+                    c1 = others[c1];
+                    codeSize[c1]++;
+                }
+                others[c1] = c2;
+                codeSize[c2]++;
+                while (others[c2] >= 0) {
+                    c2 = others[c2];
+                    codeSize[c2]++;
+                }
+            }
+            int[] bits = new int[33];
+            for (int i = 0; i <= 256; i++) {
+                if (codeSize[i] > 0) {
+                    bits[codeSize[i]]++;
+                }
+            }
+            for (int i = 32; i > 16; i--) {
+                while (bits[i] > 0) {
+                    int j = i - 2;
+                    while (bits[j] == 0) {
+                        j--;
+                    }
+                    bits[i] -= 2;
+                    bits[i - 1]++;
+                    bits[j + 1] += 2;
+                    bits[j]--;
+                }
+            }
+            int longest = 16;
+            while (bits[longest] == 0) {
+                longest--;
+            }
+            bits[longest]--;
+
+            short[] lengths = new short[16];
+            int total = 0;
+            for (int i = 1; i <= 16; i++) {
+                lengths[i - 1] = (short) bits[i];
+                total += bits[i];
+            }
+            short[] values = new short[total];
+            int index = 0;
+            for (int size = 1; size <= 32 && index < total; size++) {
+                for (int symbol = 0; symbol < 256; symbol++) {
+                    if (codeSize[symbol] == size) {
+                        values[index++] = (short) symbol;
+                    }
+                }
+            }
+            try {
+                return new HuffmanTable(lengths, values);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        private boolean isComplete(boolean ac) {
+            if (!ac) {
+                for (int size = 0; size <= 11; size++) {
+                    if (sizes[size] == 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (sizes[0x00] == 0 || sizes[0xF0] == 0) {
+                return false;
+            }
+            for (int run = 0; run < 16; run++) {
+                for (int size = 1; size <= 10; size++) {
+                    if (sizes[(run << 4) | size] == 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private int decode(BitReader in) throws IOException {
+            int entry = lookup[in.peek(LOOKAHEAD)];
+            if (entry != 0) {
+                in.skip(entry >> 8);
+                return entry & 0xFF;
+            }
+            for (int length = LOOKAHEAD + 1; length <= 16; length++) {
+                int code = in.peek(length);
+                if (code <= maxCode[length]) {
+                    in.skip(length);
+                    return values[code + valueOffset[length]] & 0xFF;
+                }
+            }
+            throw new IOException("Corrupt JPEG data");
+        }
+
+        private void encode(BitWriter out, int symbol) {
+            int size = sizes[symbol];
+            if (size == 0) {
+                throw new IllegalStateException("Huffman table has no code for symbol " + symbol);
+            }
+            out.bits(codes[symbol], size);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof HuffmanTable table && Arrays.equals(lengths, table.lengths)
+                    && Arrays.equals(values, table.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(lengths) + Arrays.hashCode(values);
+        }
+    }
+
+    private static final class BitReader {
+
+        private final byte[] data;
+        private final int end;
+        private int position;
+        private long buffer;
+        private int count;
+
+        private BitReader(byte[] data, int start, int end) {
+            this.data = data;
+            this.position = start;
+            this.end = end;
+        }
+
+        private void fill() {
+            while (count <= 56) {
+                int value = 0;
+                if (position < end) {
+                    int current = data[position] & 0xFF;
+                    if (current != 0xFF) {
+                        value = current;
+                        position++;
+                    } else if (position + 1 < end && data[position + 1] == 0) {
+                        value = 0xFF;
+                        position += 2;
+                    }
+                    // Any other marker ends the data of this interval; pad with zeros.
+                }
+                buffer = (buffer << 8) | value;
+                count += 8;
+            }
+        }
+
+        private int peek(int bits) {
+            if (count < bits) {
+                fill();
+            }
+            return (int) (buffer >>> (count - bits)) & ((1 << bits) - 1);
+        }
+
+        private void skip(int bits) {
+            count -= bits;
+        }
+
+        private int bits(int bits) {
+            int value = peek(bits);
+            count -= bits;
+            return value;
+        }
+
+        private void restart() throws IOException {
+            buffer = 0;
+            count = 0;
+            while (position + 1 < end && (data[position] & 0xFF) == 0xFF && (data[position + 1] & 0xFF) == 0xFF) {
+                position++;
+            }
+            if (position + 1 >= end || (data[position] & 0xFF) != 0xFF
+                    || (data[position + 1] & 0xF8) != 0xD0) {
+                throw new IOException("Corrupt JPEG data: missing restart marker");
+            }
+            position += 2;
+        }
+    }
+
+    private static final class BitWriter {
+
+        private byte[] out;
+        private int size;
+        private long buffer;
+        private int count;
+
+        private BitWriter(int capacity) {
+            this.out = new byte[capacity];
+        }
+
+        private void bits(int value, int bits) {
+            buffer = (buffer << bits) | (value & ((1L << bits) - 1));
+            count += bits;
+            while (count >= 8) {
+                int next = (int) (buffer >>> (count - 8)) & 0xFF;
+                put(next);
+                if (next == 0xFF) {
+                    put(0);
+                }
+                count -= 8;
+            }
+        }
+
+        private void flush() {
+            if (count > 0) {
+                bits((1 << (8 - count)) - 1, 8 - count);
+            }
+            buffer = 0;
+        }
+
+        private void restart(int index) {
+            flush();
+            put(0xFF);
+            put(0xD0 + index);
+        }
+
+        private void raw(byte[] bytes) {
+            for (byte value : bytes) {
+                put(value & 0xFF);
+            }
+        }
+
+        private void put(int value) {
+            if (size == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            out[size++] = (byte) value;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(out, size);
+        }
+    }
+}
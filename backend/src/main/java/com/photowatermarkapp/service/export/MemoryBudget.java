@@ -0,0 +1,65 @@
+package com.photowatermarkapp.service.export;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Global byte budget for decoded image data. Callers reserve their estimated working set before decoding and
+ * release it once the pixels are no longer referenced, so the number of large images in memory at once is bounded
+ * by heap size rather than by the number of workers.
+ */
+public class MemoryBudget {
+
+    private static final int UNIT = 1024;
+
+    private final long capacityBytes;
+    private final Semaphore permits;
+
+    public MemoryBudget(long capacityBytes) {
+        long units = Math.max(1, Math.min(Integer.MAX_VALUE, capacityBytes / UNIT));
+        this.capacityBytes = units * UNIT;
+        this.permits = new Semaphore((int) units, true);
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    public long getAvailableBytes() {
+        return (long) permits.availablePermits() * UNIT;
+    }
+
+    public boolean canEverFit(long bytes) {
+        return bytes <= capacityBytes;
+    }
+
+    /**
+     * Blocks until {@code bytes} are available. Requests larger than the whole budget are rejected immediately
+     * instead of waiting forever.
+     */
+    public Reservation reserve(long bytes) throws InterruptedException {
+        if (!canEverFit(bytes)) {
+            throw new IllegalArgumentException("Request of " + bytes + " bytes exceeds the memory budget of "
+                    + capacityBytes + " bytes");
+        }
+        int units = (int) Math.max(1, (bytes + UNIT - 1) / UNIT);
+        permits.acquire(units);
+        return new Reservation(units);
+    }
+
+    public final class Reservation implements AutoCloseable {
+
+        private int units;
+
+        private Reservation(int units) {
+            this.units = units;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (units > 0) {
+                permits.release(units);
+                units = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.photowatermarkapp.service.export;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Writes 8-bit gray, RGB and RGBA PNG files with the scanlines split into chunks that are filtered and deflated in
+ * parallel, in the manner of pigz. Every chunk is primed with the last 32 KB of the data before it, so compression
+ * stays close to that of a single stream, and ends with a sync flush so that the chunks concatenate into one valid
+ * zlib stream. Each chunk becomes its own IDAT chunk.
+ */
+public class PngEncoder {
+
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int CHUNK_BYTES = 256 * 1024;
+
+    private final ForkJoinPool pool;
+
+    public PngEncoder(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Whether {@code image} can be written by {@link #write}; other images need the ImageIO writer.
+     */
+    public static boolean supports(BufferedImage image) {
+        return switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+                    BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * An ancillary chunk written between IHDR and the image data.
+     */
+    public record Chunk(String type, byte[] data) {
+    }
+
+    /**
+     * Writes {@code image} with deflate {@code level} 0 (stored) to 9 (smallest).
+     */
+    public void write(BufferedImage image, ImageOutputStream output, int level) throws IOException {
+        write(image, output, level, List.of());
+    }
+
+    public void write(BufferedImage image, ImageOutputStream output, int level, List<Chunk> chunks)
+            throws IOException {
+        if (!supports(image)) {
+            throw new IllegalArgumentException("Unsupported image type for PNG encoding: " + image.getType());
+        }
+        int compression = Math.max(0, Math.min(9, level));
+        Layout layout = new Layout(image);
+        int rowsPerChunk = Math.max(1, CHUNK_BYTES / (layout.rowBytes + 1));
+        int chunkCount = (layout.height + rowsPerChunk - 1) / rowsPerChunk;
+
+        output.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, layout.width);
+        putInt(header, 4, layout.height);
+        header[8] = 8;
+        header[9] = (byte) layout.colorType;
+        writeChunk(output, "IHDR", header, 0, header.length);
+        for (Chunk chunk : chunks) {
+            writeChunk(output, chunk.type(), chunk.data(), 0, chunk.data().length);
+        }
+
+        // Compressed chunks are written in order while a bounded number of later ones is still being compressed.
+        int window = Math.max(2, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<CompressedChunk>> pending = new ArrayDeque<>();
+        long adler = 1;
+        int next = 0;
+        boolean first = true;
+        while (next < chunkCount || !pending.isEmpty()) {
+            while (next < chunkCount && pending.size() < window) {
+                int from = next * rowsPerChunk;
+                int to = Math.min(layout.height, from + rowsPerChunk);
+                boolean last = next == chunkCount - 1;
+                ForkJoinTask<CompressedChunk> task = ForkJoinTask
+                        .adapt(() -> compress(layout, from, to, compression, last));
+                if (ForkJoinTask.getPool() == pool) {
+                    task.fork();
+                } else {
+                    pool.execute(task);
+                }
+                pending.addLast(task);
+                next++;
+            }
+            CompressedChunk chunk = pending.removeFirst().join();
+            adler = combineAdler32(adler, chunk.adler, chunk.uncompressedLength);
+            byte[] data = chunk.data;
+            int length = chunk.length;
+            if (first) {
+                data = withZlibHeader(data, length, compression);
+                length += 2;
+                first = false;
+            }
+            if (pending.isEmpty() && next == chunkCount) {
+                data = Arrays.copyOf(data, length + 4);
+                putInt(data, length, (int) adler);
+                length += 4;
+            }
+            writeChunk(output, "IDAT", data, 0, length);
+        }
+        writeChunk(output, "IEND", new byte[0], 0, 0);
+    }
+
+    private static CompressedChunk compress(Layout layout, int from, int to, int level, boolean last) {
+        byte[] filtered = layout.filterRows(from, to, level);
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (from > 0) {
+                int primingRows = Math.min(from, (DICTIONARY_SIZE + layout.rowBytes) / (layout.rowBytes + 1) + 1);
+                byte[] previous = layout.filterRows(from - primingRows, from, level);
+                int length = Math.min(DICTIONARY_SIZE, previous.length);
+                deflater.setDictionary(previous, previous.length - length, length);
+            }
+            deflater.setInput(filtered);
+            if (last) {
+                deflater.finish();
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(filtered.length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            while (true) {
+                int count = deflater.deflate(buffer, 0, buffer.length,
+                        last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                compressed.write(buffer, 0, count);
+                if (last ? deflater.finished() : count < buffer.length && deflater.needsInput()) {
+                    break;
+                }
+            }
+            Adler32 checksum = new Adler32();
+            checksum.update(filtered);
+            byte[] data = compressed.toByteArray();
+            return new CompressedChunk(data, data.length, checksum.getValue(), filtered.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] withZlibHeader(byte[] data, int length, int level) {
+        byte[] result = new byte[length + 2];
+        result[0] = 0x78;
+        // FLEVEL matching the level; all four variants keep the header check valid.
+        result[1] = (byte) (level <= 1 ? 0x01 : level <= 5 ? 0x5e : level == 6 ? 0x9c : 0xda);
+        System.arraycopy(data, 0, result, 2, length);
+        return result;
+    }
+
+    /**
+     * Checksum of two concatenated pieces of data from the checksums of the pieces, as {@code adler32_combine} in
+     * zlib.
+     */
+    private static long combineAdler32(long first, long second, long secondLength) {
+        final long base = 65521;
+        long remainder = secondLength % base;
+        long sum1 = first & 0xffff;
+        long sum2 = (remainder * sum1) % base;
+        sum1 += (second & 0xffff) + base - 1;
+        sum2 += ((first >> 16) & 0xffff) + ((second >> 16) & 0xffff) + base - remainder;
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= (base << 1)) {
+            sum2 -= (base << 1);
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeChunk(ImageOutputStream output, String type, byte[] data, int offset, int length)
+            throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        output.writeInt(length);
+        output.write(typeBytes);
+        output.write(data, offset, length);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        output.writeInt((int) crc.getValue());
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    private record CompressedChunk(byte[] data, int length, long adler, long uncompressedLength) {
+    }
+
+    /**
+     * Converts rows of the source image into PNG sample order and applies the scanline filters.
+     */
+    private static final class Layout {
+
+        private final BufferedImage image;
+        private final Raster raster;
+        private final int width;
+        private final int height;
+        private final int channels;
+        private final int colorType;
+        private final int rowBytes;
+
+        private Layout(BufferedImage image) {
+            this.image = image;
+            this.raster = image.getRaster();
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            switch (image.getType()) {
+                case BufferedImage.TYPE_BYTE_GRAY -> {
+                    channels = 1;
+                    colorType = 0;
+                }
+                case BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR -> {
+                    channels = 4;
+                    colorType = 6;
+                }
+                default -> {
+                    channels = 3;
+                    colorType = 2;
+                }
+            }
+            this.rowBytes = width * channels;
+        }
+
+        /**
+         * Filtered scanlines {@code from} (inclusive) to {@code to}, each prefixed with its filter type.
+         */
+        byte[] filterRows(int from, int to, int level) {
+            byte[] result = new byte[(to - from) * (rowBytes + 1)];
+            byte[] previous = new byte[rowBytes];
+            byte[] current = new byte[rowBytes];
+            if (from > 0) {
+                readRow(from - 1, previous);
+            }
+            byte[][] candidates = new byte[5][rowBytes];
+            int[] ints = new int[width];
+            int offset = 0;
+            for (int y = from; y < to; y++) {
+                readRow(y, current, ints);
+                int filter;
+                if (level == 0) {
+                    filter = 0;
+                    System.arraycopy(current, 0, candidates[0], 0, rowBytes);
+                } else if (level == 1) {
+                    filter = 1;
+                    applyFilter(1, current, previous, candidates[1]);
+                } else {
+                    // Minimum sum of absolute differences, the heuristic libpng uses by default.
+                    filter = 0;
+                    long best = Long.MAX_VALUE;
+                    for (int type = 0; type < 5; type++) {
+                        long score = applyFilter(type, current, previous, candidates[type]);
+                        if (score < best) {
+                            best = score;
+                            filter = type;
+                        }
+                    }
+                }
+                result[offset++] = (byte) filter;
+                System.arraycopy(candidates[filter], 0, result, offset, rowBytes);
+                offset += rowBytes;
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            return result;
+        }
+
+        private void readRow(int y, byte[] target) {
+            readRow(y, target, new int[width]);
+        }
+
+        private void readRow(int y, byte[] target, int[] ints) {
+            switch (image.getType()) {
+                case BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY ->
+                    // Data elements of these types come in R, G, B(, A) order, which is PNG's order.
+                    raster.getDataElements(0, y, width, 1, target);
+                case BufferedImage.TYPE_INT_ARGB -> {
+                    raster.getDataElements(0, y, width, 1, ints);
+                    for (int x = 0, i = 0; x < width; x++, i += 4) {
+                        int pixel = ints[x];
+                        target[i] = (byte) (pixel >> 16);
+                        target[i + 1] = (byte) (pixel >> 8);
+                        target[i + 2] = (byte) pixel;
+                        target[i + 3] = (byte) (pixel >>> 24);
+                    }
+                }
+                default -> {
+                    raster.getDataElements(0, y, width, 1, ints);
+                    for (int x = 0, i = 0; x < width; x++, i += 3) {
+                        int pixel = ints[x];
+                        target[i] = (byte) (pixel >> 16);
+                        target[i + 1] = (byte) (pixel >> 8);
+                        target[i + 2] = (byte) pixel;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Applies filter {@code type} and returns the sum of the absolute filtered values as signed bytes.
+         */
+        private long applyFilter(int type, byte[] row, byte[] previous, byte[] target) {
+            int bpp = channels;
+            switch (type) {
+                case 0 -> System.arraycopy(row, 0, target, 0, rowBytes);
+                case 1 -> {
+                    System.arraycopy(row, 0, target, 0, bpp);
+                    for (int i = bpp; i < rowBytes; i++) {
+                        target[i] = (byte) (row[i] - row[i - bpp]);
+                    }
+                }
+                case 2 -> {
+                    for (int i = 0; i < rowBytes; i++) {
+                        target[i] = (byte) (row[i] - previous[i]);
+                    }
+                }
+                case 3 -> {
+                    for (int i = 0; i < bpp; i++) {
+                        target[i] = (byte) (row[i] - ((previous[i] & 0xff) >>> 1));
+                    }
+                    for (int i = bpp; i < rowBytes; i++) {
+                        target[i] = (byte) (row[i] - (((row[i - bpp] & 0xff) + (previous[i] & 0xff)) >>> 1));
+                    }
+                }
+                default -> {
+                    for (int i = 0; i < bpp; i++) {
+                        target[i] = (byte) (row[i] - previous[i]);
+                    }
+                    for (int i = bpp; i < rowBytes; i++) {
+                        target[i] = (byte) (row[i] - paeth(row[i - bpp] & 0xff, previous[i] & 0xff,
+                                previous[i - bpp] & 0xff));
+                    }
+                }
+            }
+            long score = 0;
+            for (int i = 0; i < rowBytes; i++) {
+                score += Math.abs(target[i]);
+            }
+            return score;
+        }
+
+        private static int paeth(int left, int up, int upLeft) {
+            int estimate = left + up - upLeft;
+            int distanceLeft = Math.abs(estimate - left);
+            int distanceUp = Math.abs(estimate - up);
+            int distanceUpLeft = Math.abs(estimate - upLeft);
+            if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+                return left;
+            }
+            return distanceUp <= distanceUpLeft ? up : upLeft;
+        }
+    }
+}
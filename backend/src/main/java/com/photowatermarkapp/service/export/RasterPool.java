@@ -0,0 +1,83 @@
+package com.photowatermarkapp.service.export;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Opaque {@code TYPE_INT_RGB} working images, reused across files of the same size so that batches of photos from
+ * one camera do not allocate a fresh full-size raster per file. Idle images are kept up to a byte limit; the ones
+ * released longest ago are dropped first.
+ */
+public class RasterPool {
+
+    private final long maxIdleBytes;
+    private final Map<Long, ArrayDeque<BufferedImage>> idleBySize = new HashMap<>();
+    private final ArrayDeque<BufferedImage> idleOrder = new ArrayDeque<>();
+    private long idleBytes;
+    private long reused;
+    private long allocated;
+
+    public RasterPool(long maxIdleBytes) {
+        this.maxIdleBytes = Math.max(0, maxIdleBytes);
+    }
+
+    /**
+     * Returns an image of exactly {@code width} x {@code height} whose previous content is undefined.
+     */
+    public BufferedImage acquire(int width, int height) {
+        synchronized (this) {
+            ArrayDeque<BufferedImage> idle = idleBySize.get(key(width, height));
+            BufferedImage image = idle == null ? null : idle.pollLast();
+            if (image != null) {
+                idleOrder.remove(image);
+                idleBytes -= sizeOf(image);
+                reused++;
+                return image;
+            }
+            allocated++;
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Hands an image obtained from {@link #acquire} back; it must not be used by the caller afterwards.
+     */
+    public synchronized void release(BufferedImage image) {
+        if (image == null || image.getType() != BufferedImage.TYPE_INT_RGB) {
+            return;
+        }
+        long size = sizeOf(image);
+        if (size > maxIdleBytes) {
+            return;
+        }
+        Iterator<BufferedImage> oldest = idleOrder.iterator();
+        while (idleBytes + size > maxIdleBytes && oldest.hasNext()) {
+            BufferedImage evicted = oldest.next();
+            oldest.remove();
+            idleBySize.get(key(evicted.getWidth(), evicted.getHeight())).remove(evicted);
+            idleBytes -= sizeOf(evicted);
+        }
+        idleBySize.computeIfAbsent(key(image.getWidth(), image.getHeight()), k -> new ArrayDeque<>()).addLast(image);
+        idleOrder.addLast(image);
+        idleBytes += size;
+    }
+
+    public synchronized long getReusedCount() {
+        return reused;
+    }
+
+    public synchronized long getAllocatedCount() {
+        return allocated;
+    }
+
+    private static long key(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+}
@@ -0,0 +1,161 @@
+package com.photowatermarkapp.service.export;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.photowatermarkapp.util.WeightedLruCache;
+
+/**
+ * Content-addressed store of finished export files, shared by all jobs and kept across restarts. A file is keyed by
+ * the hash of its input, the hash of the configuration and the output format, so exporting the same photos with the
+ * same settings again only links or copies the earlier result into the new output directory. The directory is
+ * bounded by total size; the least recently used files are deleted first.
+ * <p>
+ * Entries and outputs share their inode when hard links are possible. An output edited in place therefore changes
+ * its entry as well, which is detected by size and modification time and drops the entry.
+ */
+public class RenderCache {
+
+    /** Export settings that only decide where and under which name an output is written. */
+    public static final String[] PLACEMENT_FIELDS = { "outputDir", "incremental", "naming" };
+
+    private static final Logger log = LoggerFactory.getLogger(RenderCache.class);
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private record CachedFile(Path path, long size, long modified) {
+    }
+
+    private final Path directory;
+    private final String settings;
+    private final WeightedLruCache<String, CachedFile> files;
+
+    private RenderCache(Path directory, long maxBytes, String settings) {
+        this.directory = directory;
+        this.settings = settings;
+        this.files = new WeightedLruCache<>(maxBytes, CachedFile::size, (key, file) -> deleteQuietly(file.path()));
+    }
+
+    /**
+     * Opens the cache in {@code directory}, picking up the files of earlier runs in the order they were stored.
+     * {@code settings} describes the server-side options that influence rendering; it is part of every key, so
+     * changing them does not serve files rendered under the old ones.
+     */
+    public static RenderCache open(Path directory, long maxBytes, String settings) throws IOException {
+        Files.createDirectories(directory);
+        RenderCache cache = new RenderCache(directory, maxBytes, settings);
+        List<CachedFile> existing = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    // Left over from a store interrupted by a crash.
+                    deleteQuietly(path);
+                    continue;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    existing.add(new CachedFile(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                }
+            }
+        }
+        existing.sort(Comparator.comparingLong(CachedFile::modified));
+        for (CachedFile file : existing) {
+            cache.files.put(file.path().getFileName().toString(), file);
+        }
+        return cache;
+    }
+
+    public String key(String inputHash, String configHash, String format) {
+        String material = inputHash + '\n' + configHash + '\n' + format + '\n' + settings;
+        return ExportManifest.sha256(material.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The cached file for {@code key}, or {@code null} when there is none or it was modified since it was stored.
+     */
+    public Path lookup(String key) {
+        CachedFile file = files.getIfPresent(key);
+        if (file == null) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.path(), BasicFileAttributes.class);
+            if (attributes.size() == file.size() && attributes.lastModifiedTime().toMillis() == file.modified()) {
+                return file.path();
+            }
+        } catch (IOException ex) {
+            // Deleted from outside; fall through and forget it.
+        }
+        files.invalidate(key);
+        deleteQuietly(file.path());
+        return null;
+    }
+
+    /**
+     * Replaces the reserved, empty {@code target} with a hard link to {@code cached}, or with a copy when the two
+     * are on different file systems. Returns {@code false} when the file was evicted in the meantime.
+     */
+    public boolean materialize(Path cached, Path target) throws IOException {
+        Path link = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        Files.deleteIfExists(link);
+        try {
+            Files.createLink(link, cached);
+        } catch (NoSuchFileException ex) {
+            return false;
+        } catch (IOException | UnsupportedOperationException ex) {
+            try {
+                Files.copy(cached, target, StandardCopyOption.REPLACE_EXISTING);
+            } catch (NoSuchFileException missing) {
+                return false;
+            }
+            return true;
+        }
+        Files.move(link, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Adds the finished {@code output} under {@code key}, evicting older files when the cache grows too large.
+     */
+    public void store(String key, Path output) throws IOException {
+        Path temp = directory.resolve(key + "-" + Thread.currentThread().getId() + TEMP_SUFFIX);
+        Files.deleteIfExists(temp);
+        try {
+            Files.createLink(temp, output);
+        } catch (IOException | UnsupportedOperationException ex) {
+            Files.copy(output, temp);
+        }
+        Path path = directory.resolve(key);
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            deleteQuietly(temp);
+            throw ex;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        files.put(key, new CachedFile(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+    }
+
+    public WeightedLruCache.Stats stats() {
+        return files.stats();
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.warn("Failed to delete cached render {}: {}", path, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.photowatermarkapp.service.export;
+
+import java.nio.file.Path;
+
+/**
+ * An input image of an export job: the name reported back to the user and the file it is read from.
+ */
+public record SourceFile(String name, Path path) {
+}
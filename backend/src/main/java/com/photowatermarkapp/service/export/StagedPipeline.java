@@ -0,0 +1,188 @@
+package com.photowatermarkapp.service.export;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Runs items through a fixed sequence of stages. Stages do not own threads: the pipeline is a
+ * {@link FairExportScheduler.TaskSource} that hands out one step at a time, i.e. one stage applied to one item, to
+ * be run on the shared worker pool. Every stage has a limit on how many of its steps run at once, and a stage only
+ * takes new items while the queue to the next stage has room, so a slow stage applies backpressure to the ones in
+ * front of it.
+ * <p>
+ * Steps of the first stage admit new items and are handed out by {@link #poll()}. Steps of later stages continue
+ * items that are already held between stages and are handed out by {@link #pollContinuation()}.
+ */
+public final class StagedPipeline<T> implements FairExportScheduler.TaskSource {
+
+    @FunctionalInterface
+    public interface StageAction<T> {
+        void apply(T item) throws Exception;
+    }
+
+    /**
+     * Feeds the first stage. Polled under the scheduler lock, so implementations must not block.
+     */
+    public interface ItemSource<T> {
+
+        /**
+         * Returns the next item, or {@code null} when none is ready right now.
+         */
+        T poll();
+
+        /**
+         * Returns {@code true} once {@link #poll()} will never produce another item.
+         */
+        boolean isExhausted();
+
+        /**
+         * Number of items known to be waiting for the first stage.
+         */
+        int backlog();
+    }
+
+    private record Stage<T>(String name, int workers, StageAction<T> action) {
+    }
+
+    private final List<Stage<T>> stages = new ArrayList<>();
+    private final List<Queue<T>> queues = new ArrayList<>();
+    private final int queueCapacity;
+
+    private ItemSource<T> source;
+    private Consumer<T> onSuccess;
+    private BiConsumer<T, Throwable> onFailure;
+    private int[] running;
+
+    public StagedPipeline(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    public StagedPipeline<T> stage(String name, int workers, StageAction<T> action) {
+        stages.add(new Stage<>(name, Math.max(1, workers), action));
+        return this;
+    }
+
+    /**
+     * Current backlog in front of every stage. For the first stage this is the source's backlog.
+     */
+    public synchronized Map<String, Integer> queueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        for (int i = 0; i < stages.size(); i++) {
+            int depth = i == 0 ? (source == null ? 0 : source.backlog()) : queues.get(i - 1).size();
+            depths.put(stages.get(i).name(), depth);
+        }
+        return depths;
+    }
+
+    /**
+     * Prepares the pipeline to take items from {@code source}. Each item either passes every stage and is handed to
+     * {@code onSuccess}, or is handed to {@code onFailure} with the first exception raised by a stage. Both run on
+     * the worker that ran the item's last step.
+     */
+    public synchronized StagedPipeline<T> open(ItemSource<T> source, Consumer<T> onSuccess,
+            BiConsumer<T, Throwable> onFailure) {
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("Pipeline has no stages");
+        }
+        this.source = source;
+        this.onSuccess = onSuccess;
+        this.onFailure = onFailure;
+        this.running = new int[stages.size()];
+        for (int i = 1; i < stages.size(); i++) {
+            queues.add(new ArrayDeque<>());
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized Runnable poll() {
+        if (!hasRoom(0)) {
+            return null;
+        }
+        T item = source.poll();
+        return item == null ? null : step(0, item);
+    }
+
+    /**
+     * Returns a step of a later stage, preferring the stages closest to the end so items leave the pipeline as
+     * early as possible. These steps never wait for memory and release what their item holds once it is done.
+     */
+    @Override
+    public synchronized Runnable pollContinuation() {
+        for (int i = stages.size() - 1; i > 0; i--) {
+            Queue<T> queue = queues.get(i - 1);
+            if (!queue.isEmpty() && hasRoom(i)) {
+                return step(i, queue.poll());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized boolean isExhausted() {
+        if (!source.isExhausted()) {
+            return false;
+        }
+        for (int count : running) {
+            if (count > 0) {
+                return false;
+            }
+        }
+        return queues.stream().allMatch(Queue::isEmpty);
+    }
+
+    /**
+     * Removes the items waiting between stages, e.g. after the job was cancelled, and hands each to
+     * {@code discard}.
+     */
+    public void drain(Consumer<T> discard) {
+        List<T> waiting = new ArrayList<>();
+        synchronized (this) {
+            queues.forEach(queue -> {
+                waiting.addAll(queue);
+                queue.clear();
+            });
+        }
+        waiting.forEach(discard);
+    }
+
+    private boolean hasRoom(int stageIndex) {
+        if (running[stageIndex] >= stages.get(stageIndex).workers()) {
+            return false;
+        }
+        return stageIndex == stages.size() - 1 || queues.get(stageIndex).size() < queueCapacity;
+    }
+
+    private Runnable step(int stageIndex, T item) {
+        running[stageIndex]++;
+        return () -> runStep(stageIndex, item);
+    }
+
+    private void runStep(int stageIndex, T item) {
+        Throwable failure = null;
+        try {
+            stages.get(stageIndex).action().apply(item);
+        } catch (Exception | OutOfMemoryError ex) {
+            // A single oversized item fails on its own instead of stalling the whole pipeline.
+            failure = ex;
+        }
+        boolean last = stageIndex == stages.size() - 1;
+        synchronized (this) {
+            running[stageIndex]--;
+            if (failure == null && !last) {
+                queues.get(stageIndex).add(item);
+            }
+        }
+        if (failure != null) {
+            onFailure.accept(item, failure);
+        } else if (last) {
+            onSuccess.accept(item);
+        }
+    }
+}
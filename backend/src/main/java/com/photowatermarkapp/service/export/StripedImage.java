@@ -0,0 +1,248 @@
+package com.photowatermarkapp.service.export;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Vector;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A very large image that is never held in memory as a whole. Horizontal strips are decoded on demand through
+ * source regions of the underlying {@link ImageReader} and, when they intersect the overlay bounds, painted before
+ * being handed out. Writers that pull rows sequentially (such as the PNG writer) therefore only ever see one
+ * decoded strip at a time.
+ */
+public class StripedImage implements RenderedImage, Closeable {
+
+    @FunctionalInterface
+    public interface StripPainter {
+        /**
+         * Paints onto {@code strip}, whose first row is row {@code offsetY} of the full image.
+         */
+        void paint(BufferedImage strip, int offsetY);
+    }
+
+    private final ImageReader reader;
+    private final ImageInputStream stream;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int subsampling;
+    private final int width;
+    private final int height;
+    private final int stripHeight;
+    private final ColorModel colorModel;
+    private final SampleModel sampleModel;
+
+    private Rectangle overlayBounds;
+    private StripPainter overlay;
+    private int cachedIndex = -1;
+    private BufferedImage cachedStrip;
+
+    /**
+     * Takes ownership of {@code reader} and {@code stream}; both are released by {@link #close()}.
+     */
+    public StripedImage(ImageReader reader, ImageInputStream stream, int subsampling, int stripHeight)
+            throws IOException {
+        this.reader = reader;
+        this.stream = stream;
+        this.sourceWidth = reader.getWidth(0);
+        this.sourceHeight = reader.getHeight(0);
+        this.subsampling = Math.max(1, subsampling);
+        this.width = (sourceWidth + this.subsampling - 1) / this.subsampling;
+        this.height = (sourceHeight + this.subsampling - 1) / this.subsampling;
+        this.stripHeight = Math.max(1, Math.min(stripHeight, height));
+        BufferedImage first = strip(0);
+        this.colorModel = first.getColorModel();
+        this.sampleModel = first.getSampleModel().createCompatibleSampleModel(width, this.stripHeight);
+    }
+
+    /**
+     * Sets what is painted onto every strip that intersects {@code bounds}.
+     */
+    public synchronized void setOverlay(Rectangle bounds, StripPainter painter) {
+        this.overlayBounds = bounds;
+        this.overlay = painter;
+        cachedIndex = -1;
+        cachedStrip = null;
+    }
+
+    @Override
+    public synchronized void close() {
+        cachedStrip = null;
+        reader.dispose();
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+    }
+
+    private synchronized BufferedImage strip(int index) {
+        if (index == cachedIndex) {
+            return cachedStrip;
+        }
+        int offsetY = index * stripHeight;
+        int rows = Math.min(stripHeight, height - offsetY);
+        int sourceY = offsetY * subsampling;
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, sourceY, sourceWidth,
+                Math.min(rows * subsampling, sourceHeight - sourceY)));
+        if (subsampling > 1) {
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+        BufferedImage strip;
+        try {
+            strip = reader.read(0, param);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if (strip.getWidth() != width || strip.getHeight() != rows) {
+            throw new UncheckedIOException(new IOException("Unable to read image region"));
+        }
+        if (overlay != null && overlayBounds != null
+                && overlayBounds.intersects(new Rectangle(0, offsetY, width, rows))) {
+            overlay.paint(strip, offsetY);
+        }
+        cachedStrip = strip;
+        cachedIndex = index;
+        return strip;
+    }
+
+    private Raster stripRaster(int index) {
+        return strip(index).getRaster().createTranslatedChild(0, index * stripHeight);
+    }
+
+    @Override
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return java.awt.Image.UndefinedProperty;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+        return colorModel;
+    }
+
+    @Override
+    public SampleModel getSampleModel() {
+        return sampleModel;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMinX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinY() {
+        return 0;
+    }
+
+    @Override
+    public int getNumXTiles() {
+        return 1;
+    }
+
+    @Override
+    public int getNumYTiles() {
+        return (height + stripHeight - 1) / stripHeight;
+    }
+
+    @Override
+    public int getMinTileX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinTileY() {
+        return 0;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return width;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return stripHeight;
+    }
+
+    @Override
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getTileGridYOffset() {
+        return 0;
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        return stripRaster(tileY);
+    }
+
+    @Override
+    public Raster getData() {
+        return getData(new Rectangle(0, 0, width, height));
+    }
+
+    @Override
+    public Raster getData(Rectangle rect) {
+        WritableRaster raster = Raster.createWritableRaster(
+                sampleModel.createCompatibleSampleModel(rect.width, rect.height), new Point(rect.x, rect.y));
+        return copyData(raster);
+    }
+
+    @Override
+    public WritableRaster copyData(WritableRaster raster) {
+        if (raster == null) {
+            return (WritableRaster) getData();
+        }
+        Rectangle bounds = raster.getBounds().intersection(new Rectangle(0, 0, width, height));
+        if (bounds.isEmpty()) {
+            return raster;
+        }
+        int firstStrip = bounds.y / stripHeight;
+        int lastStrip = (bounds.y + bounds.height - 1) / stripHeight;
+        for (int index = firstStrip; index <= lastStrip; index++) {
+            int offsetY = index * stripHeight;
+            Raster strip = strip(index).getRaster();
+            Rectangle part = bounds.intersection(new Rectangle(0, offsetY, width, strip.getHeight()));
+            Object pixels = strip.getDataElements(part.x, part.y - offsetY, part.width, part.height, null);
+            raster.setDataElements(part.x, part.y, part.width, part.height, pixels);
+        }
+        return raster;
+    }
+}
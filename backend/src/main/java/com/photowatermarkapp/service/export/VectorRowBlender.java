@@ -0,0 +1,53 @@
+package com.photowatermarkapp.service.export;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD version of {@link AlphaCompositor.ScalarRowBlender}. Only loaded when the {@code jdk.incubator.vector}
+ * module is part of the boot layer.
+ */
+final class VectorRowBlender implements AlphaCompositor.RowBlender {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private final AlphaCompositor.RowBlender tail = new AlphaCompositor.ScalarRowBlender();
+
+    VectorRowBlender() {
+    }
+
+    @Override
+    public void blend(int[] source, int sourceOffset, int[] target, int targetOffset, int length, int opacity) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector pixel = IntVector.fromArray(SPECIES, source, sourceOffset + i);
+            IntVector background = IntVector.fromArray(SPECIES, target, targetOffset + i);
+            IntVector sourceAlpha = pixel.lanewise(VectorOperators.LSHR, 24).mul(opacity)
+                    .lanewise(VectorOperators.LSHR, 8);
+            if (sourceAlpha.eq(0).allTrue()) {
+                continue;
+            }
+            IntVector inverse = IntVector.broadcast(SPECIES, 255).sub(sourceAlpha);
+            IntVector result = sourceAlpha.add(scale(background.lanewise(VectorOperators.LSHR, 24), inverse))
+                    .lanewise(VectorOperators.LSHL, 24);
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                IntVector channel = pixel.lanewise(VectorOperators.LSHR, shift).and(0xff).mul(opacity)
+                        .lanewise(VectorOperators.LSHR, 8)
+                        .add(scale(background.lanewise(VectorOperators.LSHR, shift).and(0xff), inverse));
+                result = result.or(channel.lanewise(VectorOperators.LSHL, shift));
+            }
+            // Lanes whose source is fully transparent keep the background unchanged, as in the scalar loop.
+            result.blend(background, sourceAlpha.eq(0)).intoArray(target, targetOffset + i);
+        }
+        if (i < length) {
+            tail.blend(source, sourceOffset + i, target, targetOffset + i, length - i, opacity);
+        }
+    }
+
+    private static IntVector scale(IntVector value, IntVector factor) {
+        IntVector t = value.mul(factor).add(128);
+        return t.add(t.lanewise(VectorOperators.LSHR, 8)).lanewise(VectorOperators.LSHR, 8);
+    }
+}
@@ -0,0 +1,154 @@
+package com.photowatermarkapp.service.export;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.imageio.ImageIO;
+
+import org.springframework.util.StringUtils;
+
+import com.photowatermarkapp.model.ImageWatermarkConfig;
+import com.photowatermarkapp.util.WeightedLruCache;
+
+/**
+ * Process-wide cache of decoded image watermarks and of their pre-scaled variants, so that a logo is decoded and
+ * resampled once per batch instead of once per photo. Logos are identified by a hash of their data, computed once
+ * per configuration object: a job parses its configuration once and shares it between all of its files. The
+ * client's {@code cacheKey} is not used, since nothing makes it unique to one logo. All images are premultiplied so
+ * that compositing them is cheap.
+ */
+public class WatermarkImageCache {
+
+    /**
+     * A {@code width} of {@code 0} denotes the decoded logo at its own size.
+     */
+    private record Key(String id, int width, int height) {
+    }
+
+    private final WeightedLruCache<Key, BufferedImage> images;
+    /** Ids by configuration object; the configuration classes keep identity equality, so entries die with jobs. */
+    private final Map<ImageWatermarkConfig, String> ids = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public WatermarkImageCache(long maxBytes) {
+        this.images = new WeightedLruCache<>(maxBytes, image -> (long) image.getWidth() * image.getHeight() * 4);
+    }
+
+    /**
+     * The decoded logo, or {@code null} when the configuration holds no readable image.
+     */
+    public BufferedImage getOriginal(ImageWatermarkConfig config) {
+        String id = identify(config);
+        if (id == null) {
+            return null;
+        }
+        return images.get(new Key(id, 0, 0), key -> decode(config.getData()));
+    }
+
+    /**
+     * The logo resampled to exactly {@code width} x {@code height}, or {@code null} when it cannot be decoded.
+     */
+    public BufferedImage getScaled(ImageWatermarkConfig config, int width, int height) {
+        BufferedImage original = getOriginal(config);
+        if (original == null) {
+            return null;
+        }
+        if (original.getWidth() == width && original.getHeight() == height) {
+            return original;
+        }
+        return images.get(new Key(identify(config), width, height), key -> scale(original, width, height));
+    }
+
+    public WeightedLruCache.Stats stats() {
+        return images.stats();
+    }
+
+    private String identify(ImageWatermarkConfig config) {
+        if (config == null || !StringUtils.hasText(config.getData())) {
+            return null;
+        }
+        return ids.computeIfAbsent(config, WatermarkImageCache::hash);
+    }
+
+    private static String hash(ImageWatermarkConfig config) {
+        String data = config.getData();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return "sha256:" + HexFormat.of().formatHex(digest.digest(data.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static BufferedImage decode(String data) {
+        String base64 = data;
+        int commaIndex = data.indexOf(',');
+        if (commaIndex >= 0) {
+            base64 = data.substring(commaIndex + 1);
+        }
+
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(base64);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+
+        BufferedImage decoded;
+        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes)) {
+            decoded = ImageIO.read(bais);
+        } catch (IOException ex) {
+            return null;
+        }
+        if (decoded == null) {
+            return null;
+        }
+        BufferedImage premultiplied = new BufferedImage(decoded.getWidth(), decoded.getHeight(),
+                BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = premultiplied.createGraphics();
+        try {
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.drawImage(decoded, 0, 0, null);
+        } finally {
+            g2d.dispose();
+        }
+        return premultiplied;
+    }
+
+    /**
+     * Downscales in halving steps before the final bicubic pass so that large logos do not alias.
+     */
+    private static BufferedImage scale(BufferedImage source, int width, int height) {
+        BufferedImage current = source;
+        while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+            current = resample(current, current.getWidth() / 2, current.getHeight() / 2,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        return resample(current, width, height, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+    }
+
+    private static BufferedImage resample(BufferedImage source, int width, int height, Object interpolation) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = target.createGraphics();
+        try {
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g2d.dispose();
+        }
+        return target;
+    }
+}
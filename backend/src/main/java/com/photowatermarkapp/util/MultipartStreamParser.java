@@ -0,0 +1,284 @@
+package com.photowatermarkapp.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Minimal streaming reader for {@code multipart/form-data} bodies. Unlike the servlet container's multipart
+ * support it does not buffer the request: every part is handed to the caller as a stream while the body is still
+ * arriving, so large uploads can be processed part by part.
+ */
+public final class MultipartStreamParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    @FunctionalInterface
+    public interface PartHandler {
+        /**
+         * Called once per part. Bytes of {@code content} that are not consumed are skipped after the call returns.
+         */
+        void onPart(Part part, InputStream content) throws IOException;
+    }
+
+    public record Part(String name, String filename, String contentType) {
+
+        public boolean isFile() {
+            return filename != null;
+        }
+    }
+
+    private final InputStream input;
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    /** Buffer index below which no delimiter starts, so that every buffered byte is searched only once. */
+    private int scanned;
+    private boolean inputExhausted;
+
+    private MultipartStreamParser(InputStream input, String boundary) {
+        this.input = input;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[Math.max(BUFFER_SIZE, delimiter.length * 2)];
+        // The first boundary is not preceded by a line break; pretend it is so every boundary looks the same.
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        this.limit = 2;
+    }
+
+    public static String extractBoundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("boundary=")) {
+                return unquote(trimmed.substring("boundary=".length()));
+            }
+        }
+        return null;
+    }
+
+    public static void parse(InputStream input, String boundary, PartHandler handler) throws IOException {
+        new MultipartStreamParser(input, boundary).run(handler);
+    }
+
+    private void run(PartHandler handler) throws IOException {
+        // Skip the preamble up to the first boundary.
+        drain(new PartInputStream());
+        while (true) {
+            ensure(2);
+            if (limit - position >= 2 && buffer[position] == '-' && buffer[position + 1] == '-') {
+                return;
+            }
+            skipLineBreak();
+            Part part = readHeaders();
+            PartInputStream content = new PartInputStream();
+            handler.onPart(part, content);
+            drain(content);
+        }
+    }
+
+    private Part readHeaders() throws IOException {
+        String name = null;
+        String filename = null;
+        String contentType = null;
+        int consumed = 0;
+        while (true) {
+            String line = readLine();
+            consumed += line.length() + 2;
+            if (consumed > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart part headers are too large");
+            }
+            if (line.isEmpty()) {
+                return new Part(name, filename, contentType);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (header.equals("content-type")) {
+                contentType = value;
+            } else if (header.equals("content-disposition")) {
+                for (String parameter : value.split(";")) {
+                    String trimmed = parameter.trim();
+                    int equals = trimmed.indexOf('=');
+                    if (equals < 0) {
+                        continue;
+                    }
+                    String key = trimmed.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+                    String parameterValue = unquote(trimmed.substring(equals + 1).trim());
+                    if (key.equals("name")) {
+                        name = parameterValue;
+                    } else if (key.equals("filename")) {
+                        filename = parameterValue;
+                    }
+                }
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            ensure(2);
+            if (limit - position < 2) {
+                throw new IOException("Unexpected end of multipart stream");
+            }
+            if (buffer[position] == '\r' && buffer[position + 1] == '\n') {
+                position += 2;
+                return line.toString(StandardCharsets.UTF_8);
+            }
+            line.write(buffer[position++]);
+            if (line.size() > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart part headers are too large");
+            }
+        }
+    }
+
+    private void skipLineBreak() throws IOException {
+        ensure(2);
+        if (limit - position < 2 || buffer[position] != '\r' || buffer[position + 1] != '\n') {
+            throw new IOException("Malformed multipart boundary");
+        }
+        position += 2;
+    }
+
+    private void drain(InputStream content) throws IOException {
+        byte[] scratch = new byte[8192];
+        while (content.read(scratch) >= 0) {
+            // discard
+        }
+    }
+
+    /**
+     * Makes sure at least {@code bytes} unread bytes are buffered unless the input ends first.
+     */
+    private void ensure(int bytes) throws IOException {
+        if (limit - position >= bytes || inputExhausted) {
+            return;
+        }
+        compact();
+        while (limit < bytes || limit < buffer.length / 2) {
+            int read = input.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                inputExhausted = true;
+                return;
+            }
+            limit += read;
+            if (limit >= bytes && input.available() <= 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer.
+     */
+    private void compact() {
+        if (position == 0) {
+            return;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        scanned = Math.max(0, scanned - position);
+        position = 0;
+    }
+
+    /**
+     * Position of the next delimiter in the buffer, or {@code -1}. Resumes where the previous search stopped; a
+     * delimiter starts with a line break, so only the candidates found by the scan for {@code '\r'} are compared.
+     */
+    private int indexOfDelimiter() {
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = Math.max(position, scanned); i <= last; i++) {
+            if (buffer[i] != '\r') {
+                continue;
+            }
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            scanned = i;
+            return i;
+        }
+        scanned = Math.max(scanned, last + 1);
+        return -1;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1).replace("\\\"", "\"");
+        }
+        return value;
+    }
+
+    private final class PartInputStream extends InputStream {
+
+        private boolean finished;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                ensure(delimiter.length);
+                int found = indexOfDelimiter();
+                int available;
+                if (found >= 0) {
+                    available = found - position;
+                    if (available == 0) {
+                        position += delimiter.length;
+                        finished = true;
+                        return -1;
+                    }
+                } else if (inputExhausted && limit - position < delimiter.length) {
+                    throw new IOException("Unexpected end of multipart stream");
+                } else {
+                    // Keep a possible partial delimiter at the end of the buffer for the next round.
+                    available = limit - position - (delimiter.length - 1);
+                    if (available <= 0) {
+                        if (inputExhausted) {
+                            throw new IOException("Unexpected end of multipart stream");
+                        }
+                        fill();
+                        continue;
+                    }
+                }
+                int count = Math.min(length, available);
+                System.arraycopy(buffer, position, target, offset, count);
+                position += count;
+                return count;
+            }
+        }
+
+        private void fill() throws IOException {
+            compact();
+            int read = input.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                inputExhausted = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+}
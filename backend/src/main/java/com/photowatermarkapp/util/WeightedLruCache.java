@@ -0,0 +1,118 @@
+package com.photowatermarkapp.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Least-recently-used cache bounded by the total weight of its values (typically their size in bytes) rather than
+ * by the number of entries. Values heavier than the whole budget are handed out but never stored.
+ */
+public class WeightedLruCache<K, V> {
+
+    public record Stats(long hits, long misses, long evictions, int entries, long weight, long maxWeight) {
+
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+    }
+
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final BiConsumer<K, V> evictionListener;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public WeightedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this(maxWeight, weigher, null);
+    }
+
+    /**
+     * {@code evictionListener} is called, outside the cache lock, for every entry evicted to make room and for every
+     * value too heavy to be stored at all.
+     */
+    public WeightedLruCache(long maxWeight, ToLongFunction<V> weigher, BiConsumer<K, V> evictionListener) {
+        this.maxWeight = Math.max(0, maxWeight);
+        this.weigher = weigher;
+        this.evictionListener = evictionListener;
+    }
+
+    public synchronized V getIfPresent(K key) {
+        V value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value or loads and stores it. The loader runs outside the cache lock, so concurrent misses
+     * for the same key may load it more than once; the last one stored wins.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        value = loader.apply(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        List<Map.Entry<K, V>> evicted = new ArrayList<>();
+        synchronized (this) {
+            long valueWeight = weigher.applyAsLong(value);
+            V previous = entries.remove(key);
+            if (previous != null) {
+                weight -= weigher.applyAsLong(previous);
+            }
+            if (valueWeight > maxWeight) {
+                evicted.add(Map.entry(key, value));
+            } else {
+                entries.put(key, value);
+                weight += valueWeight;
+                Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+                while (weight > maxWeight && eldest.hasNext()) {
+                    Map.Entry<K, V> entry = eldest.next();
+                    weight -= weigher.applyAsLong(entry.getValue());
+                    evicted.add(Map.entry(entry.getKey(), entry.getValue()));
+                    eldest.remove();
+                    evictions++;
+                }
+            }
+        }
+        if (evictionListener != null) {
+            evicted.forEach(entry -> evictionListener.accept(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        V previous = entries.remove(key);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size(), weight, maxWeight);
+    }
+}
@@ -0,0 +1,66 @@
+package com.photowatermarkapp.service.export;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class AlphaCompositorTest {
+
+    private static final int LENGTH = 1003;
+    private static final int SOURCE_OFFSET = 5;
+    private static final int TARGET_OFFSET = 11;
+
+    @Test
+    void vectorBlenderMatchesScalarBlenderForEveryOpacity() {
+        AlphaCompositor.RowBlender vector = AlphaCompositor.vectorBlender();
+        assertNotNull(vector, "Tests must run with --add-modules jdk.incubator.vector");
+        AlphaCompositor.RowBlender scalar = new AlphaCompositor.ScalarRowBlender();
+        Random random = new Random(42);
+        int[] source = sprite(random);
+        int[] background = new int[TARGET_OFFSET + LENGTH];
+        for (int i = 0; i < background.length; i++) {
+            background[i] = random.nextInt();
+        }
+        for (int opacity = 0; opacity <= 256; opacity++) {
+            int[] expected = background.clone();
+            int[] actual = background.clone();
+            scalar.blend(source, SOURCE_OFFSET, expected, TARGET_OFFSET, LENGTH, opacity);
+            vector.blend(source, SOURCE_OFFSET, actual, TARGET_OFFSET, LENGTH, opacity);
+            assertArrayEquals(expected, actual, "Blenders differ at opacity " + opacity);
+        }
+    }
+
+    @Test
+    void scalarBlenderCoversOpaqueAndTransparentPixels() {
+        AlphaCompositor.RowBlender scalar = new AlphaCompositor.ScalarRowBlender();
+        int[] source = { 0xff336699, 0x00000000, 0x80404040 };
+        int[] target = { 0xff000000, 0xff123456, 0xffffffff };
+        scalar.blend(source, 0, target, 0, source.length, 256);
+        assertEquals(0xff336699, target[0]);
+        assertEquals(0xff123456, target[1]);
+        assertEquals(0xffbfbfbf, target[2]);
+    }
+
+    /**
+     * Premultiplied pixels with a run of every alpha extreme so whole vectors take the transparent shortcut.
+     */
+    private static int[] sprite(Random random) {
+        int[] pixels = new int[SOURCE_OFFSET + LENGTH];
+        for (int i = 0; i < pixels.length; i++) {
+            int alpha = switch (i / 64 % 4) {
+                case 0 -> 0;
+                case 1 -> 255;
+                default -> random.nextInt(256);
+            };
+            int red = alpha == 0 ? 0 : random.nextInt(alpha + 1);
+            int green = alpha == 0 ? 0 : random.nextInt(alpha + 1);
+            int blue = alpha == 0 ? 0 : random.nextInt(alpha + 1);
+            pixels[i] = alpha << 24 | red << 16 | green << 8 | blue;
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,127 @@
+package com.photowatermarkapp.service.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.photowatermarkapp.model.ExportConfig;
+import com.photowatermarkapp.model.TextWatermarkConfig;
+import com.photowatermarkapp.model.WatermarkConfig;
+
+class ExportManifestTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entriesSurviveReopening() throws IOException {
+        ExportManifest.Entry first = entry("/photos/a.jpg", "hash-a", "a.jpg");
+        ExportManifest.Entry second = entry("/photos/b.jpg", "hash-b", "b.jpg");
+        try (ExportManifest manifest = ExportManifest.open(directory)) {
+            assertNull(manifest.find(first.source()));
+            manifest.record(first);
+            manifest.record(second);
+        }
+        try (ExportManifest manifest = ExportManifest.open(directory)) {
+            assertEquals(first, manifest.find(first.source()));
+            assertEquals(second, manifest.find(second.source()));
+            assertNull(manifest.find("/photos/c.jpg"));
+        }
+    }
+
+    @Test
+    void rewrittenInputKeepsOnlyItsLatestEntry() throws IOException {
+        ExportManifest.Entry old = entry("/photos/a.jpg", "hash-1", "a.jpg");
+        ExportManifest.Entry rewritten = entry("/photos/a.jpg", "hash-2", "a (1).jpg");
+        try (ExportManifest manifest = ExportManifest.open(directory)) {
+            manifest.record(old);
+            manifest.record(rewritten);
+            assertEquals(rewritten, manifest.find(old.source()));
+        }
+        // Compacted to one line per input on close.
+        assertEquals(1, lines().size());
+        try (ExportManifest manifest = ExportManifest.open(directory)) {
+            assertEquals(rewritten, manifest.find(old.source()));
+        }
+    }
+
+    @Test
+    void entriesAppendedBeforeACrashAreRead() throws IOException {
+        ExportManifest manifest = ExportManifest.open(directory);
+        ExportManifest.Entry entry = entry("/photos/a.jpg", "hash-a", "a.jpg");
+        manifest.record(entry);
+        // Not closed, like a process that died mid-job.
+        try (ExportManifest reopened = ExportManifest.open(directory)) {
+            assertEquals(entry, reopened.find(entry.source()));
+        }
+    }
+
+    @Test
+    void tornLastLineIsIgnoredAndLaterEntriesStayReadable() throws IOException {
+        ExportManifest.Entry kept = entry("/photos/a.jpg", "hash-a", "a.jpg");
+        try (ExportManifest manifest = ExportManifest.open(directory)) {
+            manifest.record(kept);
+        }
+        Files.writeString(directory.resolve(ExportManifest.FILE_NAME), "{\"source\":\"/photos/b.jpg\",\"si",
+                StandardOpenOption.APPEND);
+
+        ExportManifest.Entry added = entry("/photos/c.jpg", "hash-c", "c.jpg");
+        ExportManifest manifest = ExportManifest.open(directory);
+        assertEquals(kept, manifest.find(kept.source()));
+        assertNull(manifest.find("/photos/b.jpg"));
+        manifest.record(added);
+        // Crashes again before compacting: the new entry must not have been glued onto the torn line.
+        try (ExportManifest reopened = ExportManifest.open(directory)) {
+            assertEquals(kept, reopened.find(kept.source()));
+            assertEquals(added, reopened.find(added.source()));
+        }
+    }
+
+    @Test
+    void configHashIgnoresPlacementButNotAppearance() {
+        String hash = ExportManifest.configHash(watermark("(c) me"), export("jpeg", "/out/one", true));
+        assertEquals(hash, ExportManifest.configHash(watermark("(c) me"), export("jpeg", "/out/one", true)));
+        assertEquals(hash, ExportManifest.configHash(watermark("(c) me"), export("jpeg", "/out/two", false)));
+        assertNotEquals(hash, ExportManifest.configHash(watermark("(c) you"), export("jpeg", "/out/one", true)));
+        assertNotEquals(hash, ExportManifest.configHash(watermark("(c) me"), export("png", "/out/one", true)));
+    }
+
+    private List<String> lines() throws IOException {
+        return Files.readAllLines(directory.resolve(ExportManifest.FILE_NAME), StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.isBlank())
+                .toList();
+    }
+
+    private static ExportManifest.Entry entry(String source, String inputHash, String output) {
+        return new ExportManifest.Entry(source, 1234, 1_700_000_000_000L, inputHash, "config", output);
+    }
+
+    private static WatermarkConfig watermark(String content) {
+        TextWatermarkConfig text = new TextWatermarkConfig();
+        text.setContent(content);
+        text.setFontSize(24);
+        WatermarkConfig config = new WatermarkConfig();
+        config.setType("text");
+        config.setText(text);
+        return config;
+    }
+
+    private static ExportConfig export(String format, String outputDir, boolean incremental) {
+        ExportConfig config = new ExportConfig();
+        config.setFormat(format);
+        config.setOutputDir(outputDir);
+        config.setIncremental(incremental);
+        config.setJpegQuality(90);
+        return config;
+    }
+}
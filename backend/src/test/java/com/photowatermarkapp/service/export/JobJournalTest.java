@@ -0,0 +1,145 @@
+package com.photowatermarkapp.service.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.photowatermarkapp.model.export.ExportFileResult;
+import com.photowatermarkapp.model.export.ExportRequest;
+
+class JobJournalTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayRestoresEverythingRecorded() throws IOException {
+        JobJournal journal = create(JobJournal.Kind.UPLOAD);
+        JobInputs inputs = inputs(2, true);
+        journal.recordInputs(inputs);
+        journal.recordOutput(0, "a_wm.jpg");
+        journal.recordResult(0, result("a.jpg", "a_wm.jpg"));
+        journal.close();
+
+        JobJournal.Replay replay = JobJournal.read(file(), mapper);
+        assertEquals("job", replay.jobId());
+        assertEquals(JobJournal.Kind.UPLOAD, replay.kind());
+        assertEquals("high", replay.request().getPriority());
+        assertEquals(directory.resolve("out"), replay.outputDir());
+        assertEquals(List.of(inputs.get(0), inputs.get(1)), replay.inputs());
+        assertTrue(replay.sealed());
+        assertEquals("a_wm.jpg", replay.outputs().get(0));
+        assertEquals("a_wm.jpg", replay.results().get(0).getOutputName());
+        assertFalse(replay.results().containsKey(1));
+        assertEquals(Files.size(file()), replay.length());
+    }
+
+    @Test
+    void partlyWrittenLastRecordIsIgnoredAndTruncatedOnResume() throws IOException {
+        JobJournal journal = create(JobJournal.Kind.STREAM);
+        journal.recordInputs(inputs(2, false));
+        journal.recordResult(0, result("a.jpg", "a_wm.jpg"));
+        journal.close();
+        long complete = Files.size(file());
+        Files.write(file(), "{\"type\":\"result\",\"index\":1,\"res".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        JobJournal.Replay replay = JobJournal.read(file(), mapper);
+        assertEquals(complete, replay.length());
+        assertEquals(2, replay.inputs().size());
+        assertFalse(replay.sealed());
+        assertEquals(1, replay.results().size());
+
+        JobJournal resumed = JobJournal.resume(file(), replay, mapper);
+        JobInputs inputs = JobInputs.resumed(replay.inputs(), null, new BitSet());
+        inputs.add(new SourceFile("c.jpg", directory.resolve("c.jpg")));
+        inputs.seal();
+        resumed.recordInputs(inputs);
+        resumed.recordResult(1, result("b.jpg", "b_wm.jpg"));
+        resumed.close();
+
+        JobJournal.Replay again = JobJournal.read(file(), mapper);
+        assertEquals(Files.size(file()), again.length(), "the torn record was cut off, not left in the middle");
+        assertEquals(3, again.inputs().size());
+        assertEquals("c.jpg", again.inputs().get(2).name());
+        assertTrue(again.sealed());
+        assertEquals("b_wm.jpg", again.results().get(1).getOutputName());
+    }
+
+    @Test
+    void unreadableRecordsAndResultsWithoutInputAreSkipped() throws IOException {
+        JobJournal journal = create(JobJournal.Kind.UPLOAD);
+        journal.recordInputs(inputs(1, false));
+        journal.close();
+        Files.write(file(), "not json\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        JobJournal.Replay replay = JobJournal.read(file(), mapper);
+        JobJournal resumed = JobJournal.resume(file(), replay, mapper);
+        resumed.recordResult(0, result("a.jpg", "a_wm.jpg"));
+        resumed.recordResult(3, result("d.jpg", "d_wm.jpg"));
+        resumed.close();
+
+        JobJournal.Replay again = JobJournal.read(file(), mapper);
+        assertEquals(1, again.inputs().size());
+        assertEquals(1, again.results().size());
+        assertTrue(again.results().containsKey(0));
+    }
+
+    @Test
+    void discardDeletesTheJournalAndCloseKeepsIt() throws IOException {
+        JobJournal journal = create(JobJournal.Kind.UPLOAD);
+        journal.close();
+        journal.recordResult(0, result("a.jpg", "a_wm.jpg"));
+        journal.discard();
+        assertTrue(Files.exists(file()), "a closed journal is kept for the next start");
+        assertTrue(JobJournal.read(file(), mapper).results().isEmpty());
+
+        Files.delete(file());
+        JobJournal finished = create(JobJournal.Kind.UPLOAD);
+        finished.discard();
+        assertFalse(Files.exists(file()));
+    }
+
+    private JobJournal create(JobJournal.Kind kind) throws IOException {
+        ExportRequest request = new ExportRequest();
+        request.setPriority("high");
+        return JobJournal.create(directory.resolve("journal"), "job", kind, request, directory.resolve("out"), mapper);
+    }
+
+    private Path file() {
+        return directory.resolve("journal").resolve("job" + JobJournal.SUFFIX);
+    }
+
+    private JobInputs inputs(int count, boolean sealed) {
+        JobInputs inputs = new JobInputs(directory.resolve("staging"));
+        for (int i = 0; i < count; i++) {
+            String name = (char) ('a' + i) + ".jpg";
+            inputs.add(new SourceFile(name, directory.resolve("staging").resolve(name)));
+        }
+        if (sealed) {
+            inputs.seal();
+        }
+        return inputs;
+    }
+
+    private static ExportFileResult result(String source, String output) {
+        ExportFileResult result = new ExportFileResult();
+        result.setSourceName(source);
+        result.setOutputName(output);
+        result.setSuccess(true);
+        return result;
+    }
+}
@@ -0,0 +1,326 @@
+package com.photowatermarkapp.service.export;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Node;
+
+class JpegTranscoderTest {
+
+    private static final int WIDTH = 203;
+    private static final int HEIGHT = 141;
+    private static final Rectangle OVERLAY = new Rectangle(37, 21, 58, 45);
+    private static final String JPEG_METADATA = "javax_imageio_jpeg_image_1.0";
+
+    @Test
+    void colorWithStandardTables() throws IOException {
+        assertRoundTrip(encode(source(BufferedImage.TYPE_INT_RGB), false, 0), 16);
+    }
+
+    @Test
+    void colorWithOptimizedTables() throws IOException {
+        assertRoundTrip(encode(source(BufferedImage.TYPE_INT_RGB), true, 0), 16);
+    }
+
+    @Test
+    void grayWithStandardTables() throws IOException {
+        assertRoundTrip(encode(source(BufferedImage.TYPE_BYTE_GRAY), false, 0), 8);
+    }
+
+    @Test
+    void grayWithOptimizedTables() throws IOException {
+        assertRoundTrip(encode(source(BufferedImage.TYPE_BYTE_GRAY), true, 0), 8);
+    }
+
+    @Test
+    void colorWithRestartInterval() throws IOException {
+        byte[] transcoded = assertRoundTrip(encode(source(BufferedImage.TYPE_INT_RGB), false, 5), 16);
+        assertRestartMarkers(transcoded, 16, 5);
+    }
+
+    @Test
+    void grayWithRestartIntervalAndOptimizedTables() throws IOException {
+        byte[] transcoded = assertRoundTrip(encode(source(BufferedImage.TYPE_BYTE_GRAY), true, 7), 8);
+        assertRestartMarkers(transcoded, 8, 7);
+    }
+
+    @Test
+    void withoutOverlayKeepsEveryPixel() throws IOException {
+        byte[] original = encode(source(BufferedImage.TYPE_INT_RGB), true, 3);
+        JpegTranscoder transcoder = JpegTranscoder.parse(original);
+        assertNotNull(transcoder);
+        byte[] transcoded = transcoder.transcode(null, 0, 0);
+        assertRasterEquals(readRaster(original), readRaster(transcoded), new Rectangle());
+    }
+
+    @Test
+    void keepsIccProfileAndDropsOtherMetadata() throws IOException {
+        byte[] profile = ICC_Profile.getInstance(ColorSpace.CS_sRGB).getData();
+        int half = profile.length / 2;
+        byte[] firstIcc = iccSegment(1, 2, Arrays.copyOfRange(profile, 0, half));
+        byte[] secondIcc = iccSegment(2, 2, Arrays.copyOfRange(profile, half, profile.length));
+        byte[] exif = segment(0xE1, "Exif\0\0MM".getBytes(StandardCharsets.US_ASCII));
+        byte[] comment = segment(0xFE, "comment".getBytes(StandardCharsets.US_ASCII));
+        byte[] original = JpegSegments.insert(encode(source(BufferedImage.TYPE_INT_RGB), false, 0),
+                List.of(exif, firstIcc, comment, secondIcc));
+
+        JpegTranscoder transcoder = JpegTranscoder.parse(original);
+        assertNotNull(transcoder);
+        List<byte[]> segments = headerSegments(transcoder.transcode(null, 0, 0));
+
+        List<byte[]> icc = segments.stream().filter(segment -> (segment[1] & 0xFF) == 0xE2).toList();
+        assertEquals(2, icc.size());
+        assertArrayEquals(firstIcc, icc.get(0));
+        assertArrayEquals(secondIcc, icc.get(1));
+        assertTrue(segments.stream().noneMatch(segment -> (segment[1] & 0xFF) == 0xE1 || (segment[1] & 0xFF) == 0xFE),
+                "EXIF and comments are dropped");
+    }
+
+    /**
+     * Transcodes {@code original} with a half-transparent overlay and checks the result against a full decode of the
+     * source with the overlay painted on top.
+     */
+    private static byte[] assertRoundTrip(byte[] original, int mcuSize) throws IOException {
+        JpegTranscoder transcoder = JpegTranscoder.parse(original);
+        assertNotNull(transcoder, "baseline file should be transcodable");
+        assertEquals(WIDTH, transcoder.getWidth());
+        assertEquals(HEIGHT, transcoder.getHeight());
+
+        BufferedImage overlay = new BufferedImage(OVERLAY.width, OVERLAY.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = overlay.createGraphics();
+        g.setColor(new Color(240, 230, 200, 150));
+        g.fillRect(0, 0, OVERLAY.width, OVERLAY.height);
+        g.dispose();
+        byte[] transcoded = transcoder.transcode(overlay, OVERLAY.x, OVERLAY.y);
+
+        // Whole MCUs the overlay paints into; every other MCU keeps its coefficients.
+        int fromX = OVERLAY.x / mcuSize * mcuSize;
+        int fromY = OVERLAY.y / mcuSize * mcuSize;
+        int toX = (OVERLAY.x + OVERLAY.width + mcuSize - 1) / mcuSize * mcuSize;
+        int toY = (OVERLAY.y + OVERLAY.height + mcuSize - 1) / mcuSize * mcuSize;
+        Rectangle blended = new Rectangle(fromX, fromY, toX - fromX, toY - fromY);
+
+        Raster before = readRaster(original);
+        Raster after = readRaster(transcoded);
+        if (before.getNumBands() == 1) {
+            assertRasterEquals(before, after, blended);
+        } else {
+            // Luma is not resampled by the decoder, so it must match exactly outside the blended MCUs. Chroma is
+            // upsampled from neighbouring samples, so it is compared one MCU further out.
+            assertBandEquals(before, after, 0, blended);
+            Rectangle grown = new Rectangle(blended);
+            grown.grow(mcuSize, mcuSize);
+            assertRasterEquals(before, after, grown);
+        }
+
+        // Expected result: the full decode of the source with the overlay blended on top, like a regular export.
+        int overlayColor = overlay.getRGB(0, 0);
+        double alpha = (overlayColor >>> 24) / 255.0;
+        int[] overlaySamples;
+        BufferedImage expectedImage = null;
+        BufferedImage actualImage = null;
+        if (before.getNumBands() == 1) {
+            int red = (overlayColor >> 16) & 0xFF;
+            int green = (overlayColor >> 8) & 0xFF;
+            int blue = overlayColor & 0xFF;
+            overlaySamples = new int[] { (int) Math.round(0.299 * red + 0.587 * green + 0.114 * blue) };
+        } else {
+            overlaySamples = new int[] { (overlayColor >> 16) & 0xFF, (overlayColor >> 8) & 0xFF, overlayColor & 0xFF };
+            expectedImage = ImageIO.read(new ByteArrayInputStream(original));
+            actualImage = ImageIO.read(new ByteArrayInputStream(transcoded));
+        }
+        // The hard overlay edge rings after quantization and its colour is averaged by chroma subsampling, so the
+        // largest error is only checked a few pixels inside it.
+        Rectangle interior = new Rectangle(OVERLAY);
+        interior.grow(-4, -4);
+        long total = 0;
+        int max = 0;
+        for (int y = OVERLAY.y; y < OVERLAY.y + OVERLAY.height; y++) {
+            for (int x = OVERLAY.x; x < OVERLAY.x + OVERLAY.width; x++) {
+                for (int band = 0; band < overlaySamples.length; band++) {
+                    int source;
+                    int got;
+                    if (expectedImage == null) {
+                        source = before.getSample(x, y, 0);
+                        got = after.getSample(x, y, 0);
+                    } else {
+                        int shift = 16 - band * 8;
+                        source = (expectedImage.getRGB(x, y) >> shift) & 0xFF;
+                        got = (actualImage.getRGB(x, y) >> shift) & 0xFF;
+                    }
+                    double want = source + (overlaySamples[band] - source) * alpha;
+                    int difference = (int) Math.round(Math.abs(want - got));
+                    total += difference;
+                    if (interior.contains(x, y)) {
+                        max = Math.max(max, difference);
+                    }
+                }
+            }
+        }
+        double mean = total / ((double) overlaySamples.length * OVERLAY.width * OVERLAY.height);
+        // Blended blocks are quantized again with the source tables, which costs about one generation of loss.
+        assertTrue(mean < 3, "mean error inside the overlay was " + mean);
+        assertTrue(max <= 8, "largest error inside the overlay was " + max);
+        return transcoded;
+    }
+
+    private static void assertRestartMarkers(byte[] jpeg, int mcuSize, int interval) {
+        int mcus = ((WIDTH + mcuSize - 1) / mcuSize) * ((HEIGHT + mcuSize - 1) / mcuSize);
+        int restarts = 0;
+        boolean dri = false;
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xFF) != 0xFF) {
+                continue;
+            }
+            int marker = jpeg[i + 1] & 0xFF;
+            if (marker >= 0xD0 && marker <= 0xD7) {
+                assertEquals(0xD0 + (restarts & 7), marker, "restart markers must count up modulo 8");
+                restarts++;
+            } else if (marker == 0xDD) {
+                dri = true;
+                assertEquals(interval, ((jpeg[i + 4] & 0xFF) << 8) | (jpeg[i + 5] & 0xFF));
+            }
+        }
+        assertTrue(dri, "restart interval should be kept");
+        assertEquals((mcus - 1) / interval, restarts);
+    }
+
+    private static void assertRasterEquals(Raster expected, Raster actual, Rectangle excluded) {
+        for (int band = 0; band < expected.getNumBands(); band++) {
+            assertBandEquals(expected, actual, band, excluded);
+        }
+    }
+
+    private static void assertBandEquals(Raster expected, Raster actual, int band, Rectangle excluded) {
+        assertEquals(expected.getNumBands(), actual.getNumBands());
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (excluded.contains(x, y)) {
+                    continue;
+                }
+                int want = expected.getSample(x, y, band);
+                int got = actual.getSample(x, y, band);
+                if (want != got) {
+                    assertEquals(want, got, "band " + band + " differs at " + x + "," + y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decoded samples before color conversion, i.e. YCbCr for color files.
+     */
+    private static Raster readRaster(byte[] jpeg) throws IOException {
+        ImageReader reader = ImageIO.getImageReadersByFormatName("jpeg").next();
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(jpeg))) {
+            reader.setInput(input);
+            return reader.readRaster(0, null);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static BufferedImage source(int type) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int r = x * 255 / WIDTH;
+                int g = y * 255 / HEIGHT;
+                int b = (int) (128 + 100 * Math.sin(x / 5.0) * Math.cos(y / 7.0));
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] iccSegment(int sequence, int count, byte[] chunk) {
+        byte[] header = "ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII);
+        byte[] payload = Arrays.copyOf(header, header.length + 2 + chunk.length);
+        payload[header.length] = (byte) sequence;
+        payload[header.length + 1] = (byte) count;
+        System.arraycopy(chunk, 0, payload, header.length + 2, chunk.length);
+        return segment(0xE2, payload);
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        byte[] segment = new byte[4 + payload.length];
+        segment[0] = (byte) 0xFF;
+        segment[1] = (byte) marker;
+        segment[2] = (byte) ((payload.length + 2) >> 8);
+        segment[3] = (byte) (payload.length + 2);
+        System.arraycopy(payload, 0, segment, 4, payload.length);
+        return segment;
+    }
+
+    /**
+     * The complete segments between SOI and the first SOS.
+     */
+    private static List<byte[]> headerSegments(byte[] jpeg) {
+        List<byte[]> segments = new ArrayList<>();
+        int position = 2;
+        while ((jpeg[position + 1] & 0xFF) != 0xDA) {
+            int end = position + 2 + (((jpeg[position + 2] & 0xFF) << 8) | (jpeg[position + 3] & 0xFF));
+            segments.add(Arrays.copyOfRange(jpeg, position, end));
+            position = end;
+        }
+        return segments;
+    }
+
+    /**
+     * Baseline JPEG at quality 90 with 2x2 chroma subsampling for color images, optionally with optimized Huffman
+     * tables and a restart interval.
+     */
+    private static byte[] encode(BufferedImage image, boolean optimize, int restartInterval) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        JPEGImageWriteParam param = new JPEGImageWriteParam(null);
+        param.setCompressionMode(JPEGImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.9f);
+        param.setOptimizeHuffmanTables(optimize);
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+        if (restartInterval > 0) {
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA);
+            Node markers = root.getElementsByTagName("markerSequence").item(0);
+            IIOMetadataNode dri = new IIOMetadataNode("dri");
+            dri.setAttribute("interval", Integer.toString(restartInterval));
+            markers.insertBefore(dri, markers.getFirstChild());
+            metadata.setFromTree(JPEG_METADATA, root);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+}
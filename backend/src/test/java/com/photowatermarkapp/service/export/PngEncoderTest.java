@@ -0,0 +1,134 @@
+package com.photowatermarkapp.service.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class PngEncoderTest {
+
+    private final PngEncoder encoder = new PngEncoder(new ForkJoinPool(3));
+
+    @Test
+    void opaqueImageOverManyChunks() throws IOException {
+        // 3004 bytes per filtered row: several chunks, the last one partial.
+        BufferedImage image = image(1001, 300, BufferedImage.TYPE_INT_RGB);
+        for (int level : new int[] { 0, 1, 6, 9 }) {
+            assertRoundTrip(image, level);
+        }
+        assertTrue(countIdat(encode(image, 6)) > 1, "image should span several IDAT chunks");
+    }
+
+    @Test
+    void alphaImageOverManyChunks() throws IOException {
+        assertRoundTrip(image(777, 400, BufferedImage.TYPE_INT_ARGB), 6);
+    }
+
+    @Test
+    void byteLayouts() throws IOException {
+        assertRoundTrip(image(513, 260, BufferedImage.TYPE_3BYTE_BGR), 6);
+        assertRoundTrip(image(513, 260, BufferedImage.TYPE_4BYTE_ABGR), 6);
+        assertRoundTrip(image(1025, 300, BufferedImage.TYPE_BYTE_GRAY), 6);
+    }
+
+    @Test
+    void singleRows() throws IOException {
+        assertRoundTrip(image(1, 1, BufferedImage.TYPE_INT_ARGB), 6);
+        assertRoundTrip(image(5000, 1, BufferedImage.TYPE_INT_RGB), 6);
+        // One row larger than a chunk.
+        assertRoundTrip(image(100_000, 1, BufferedImage.TYPE_INT_RGB), 1);
+    }
+
+    @Test
+    void narrowTallImage() throws IOException {
+        BufferedImage image = image(1, 100_000, BufferedImage.TYPE_INT_RGB);
+        assertRoundTrip(image, 6);
+        assertTrue(countIdat(encode(image, 6)) > 1, "image should span several IDAT chunks");
+    }
+
+    @Test
+    void writesAncillaryChunks() throws IOException {
+        BufferedImage image = image(64, 48, BufferedImage.TYPE_INT_RGB);
+        byte[] text = "Comment\0hello".getBytes(StandardCharsets.ISO_8859_1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            encoder.write(image, output, 6, List.of(new PngEncoder.Chunk("tEXt", text)));
+        }
+        byte[] png = bytes.toByteArray();
+        assertTrue(new String(png, StandardCharsets.ISO_8859_1).contains("tEXtComment\0hello"));
+        assertPixelsEqual(image, ImageIO.read(new ByteArrayInputStream(png)));
+    }
+
+    private void assertRoundTrip(BufferedImage image, int level) throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encode(image, level)));
+        assertNotNull(decoded, "ImageIO should read the encoded PNG");
+        assertPixelsEqual(image, decoded);
+    }
+
+    private byte[] encode(BufferedImage image, int level) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            encoder.write(image, output, level);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void assertPixelsEqual(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        boolean gray = expected.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                // Gray is compared as samples; getRGB would apply a colour space conversion.
+                long want = gray ? expected.getRaster().getSample(x, y, 0) : expected.getRGB(x, y);
+                long got = gray ? actual.getRaster().getSample(x, y, 0) : actual.getRGB(x, y);
+                assertEquals(want, got, "pixel " + x + "," + y);
+            }
+        }
+    }
+
+    private static int countIdat(byte[] png) {
+        int count = 0;
+        int position = 8;
+        while (position < png.length) {
+            int length = ((png[position] & 0xFF) << 24) | ((png[position + 1] & 0xFF) << 16)
+                    | ((png[position + 2] & 0xFF) << 8) | (png[position + 3] & 0xFF);
+            if (new String(png, position + 4, 4, StandardCharsets.US_ASCII).equals("IDAT")) {
+                count++;
+            }
+            position += 12 + length;
+        }
+        return count;
+    }
+
+    /**
+     * Gradients with noise, so every filter type gets picked somewhere, and varying alpha including 0 and 255.
+     */
+    private static BufferedImage image(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int alpha = (x + y) % 5 == 0 ? 0 : (x * y) % 7 == 0 ? 255 : random.nextInt(256);
+                int red = (x * 255 / width + random.nextInt(8)) & 0xFF;
+                int green = (y * 255 / height) & 0xFF;
+                int blue = random.nextInt(4) == 0 ? random.nextInt(256) : (x ^ y) & 0xFF;
+                image.setRGB(x, y, alpha << 24 | red << 16 | green << 8 | blue);
+            }
+        }
+        return image;
+    }
+}
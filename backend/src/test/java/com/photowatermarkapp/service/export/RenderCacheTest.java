@@ -0,0 +1,102 @@
+package com.photowatermarkapp.service.export;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RenderCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storedOutputIsFoundAndMaterialized() throws IOException {
+        RenderCache cache = RenderCache.open(directory.resolve("cache"), 1 << 20, "settings");
+        String key = cache.key("input", "config", "jpeg");
+        assertNull(cache.lookup(key));
+
+        Path output = write("first/a.jpg", 100, 1);
+        cache.store(key, output);
+        Path cached = cache.lookup(key);
+        assertNotNull(cached);
+
+        Path target = Files.createFile(Files.createDirectories(directory.resolve("second")).resolve("a.jpg"));
+        assertTrue(cache.materialize(cached, target));
+        assertArrayEquals(Files.readAllBytes(output), Files.readAllBytes(target));
+    }
+
+    @Test
+    void keyCoversInputConfigFormatAndSettings() throws IOException {
+        RenderCache cache = RenderCache.open(directory, 1 << 20, "settings");
+        String key = cache.key("input", "config", "jpeg");
+        assertEquals(key, cache.key("input", "config", "jpeg"));
+        assertNotEquals(key, cache.key("other", "config", "jpeg"));
+        assertNotEquals(key, cache.key("input", "other", "jpeg"));
+        assertNotEquals(key, cache.key("input", "config", "png"));
+        assertNotEquals(key, RenderCache.open(directory, 1 << 20, "changed").key("input", "config", "jpeg"));
+    }
+
+    @Test
+    void leastRecentlyUsedFilesAreEvicted() throws IOException {
+        Path cacheDirectory = directory.resolve("cache");
+        RenderCache cache = RenderCache.open(cacheDirectory, 250, "settings");
+        cache.store("a", write("a.jpg", 100, 1));
+        cache.store("b", write("b.jpg", 100, 2));
+        assertNotNull(cache.lookup("a"));
+        cache.store("c", write("c.jpg", 100, 3));
+
+        assertNotNull(cache.lookup("a"));
+        assertNull(cache.lookup("b"));
+        assertNotNull(cache.lookup("c"));
+        assertFalse(Files.exists(cacheDirectory.resolve("b")), "evicted files are deleted");
+    }
+
+    @Test
+    void outputModifiedAfterStoringIsNotServed() throws IOException {
+        RenderCache cache = RenderCache.open(directory.resolve("cache"), 1 << 20, "settings");
+        Path output = write("a.jpg", 100, 1);
+        cache.store("a", output);
+        Path cached = cache.lookup("a");
+        // A hard-linked output edited in place changes the cached file too.
+        Files.write(cached, new byte[120]);
+        Files.setLastModifiedTime(cached, FileTime.fromMillis(Files.getLastModifiedTime(cached).toMillis() + 5000));
+
+        assertNull(cache.lookup("a"));
+        assertFalse(Files.exists(cached));
+    }
+
+    @Test
+    void reopeningKeepsFilesAndDropsInterruptedStores() throws IOException {
+        Path cacheDirectory = directory.resolve("cache");
+        RenderCache cache = RenderCache.open(cacheDirectory, 1 << 20, "settings");
+        cache.store("a", write("a.jpg", 100, 1));
+        Path leftover = Files.write(cacheDirectory.resolve("b-7.tmp"), new byte[10]);
+
+        RenderCache reopened = RenderCache.open(cacheDirectory, 1 << 20, "settings");
+        assertNotNull(reopened.lookup("a"));
+        assertFalse(Files.exists(leftover));
+        assertEquals(1, reopened.stats().entries());
+    }
+
+    private Path write(String name, int size, int seed) throws IOException {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * seed);
+        }
+        Path path = directory.resolve(name);
+        Files.createDirectories(path.getParent());
+        return Files.write(path, data);
+    }
+}
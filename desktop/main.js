@@ -10,6 +10,8 @@ const BACKEND_PORT = Number(process.env.BACKEND_PORT) || 8080;
 const BACKEND_HOST = process.env.BACKEND_HOST || '127.0.0.1';
 const REPO_ROOT = path.resolve(__dirname, '..');
 const BACKEND_DIR = path.join(REPO_ROOT, 'backend');
+// Enables the SIMD watermark compositing kernel; without it the backend falls back to its scalar loop.
+const BACKEND_JVM_ARGS = ['--add-modules', 'jdk.incubator.vector'];
 
 let backendProcess;
 let mainWindow;
@@ -62,7 +64,7 @@ async function ensureBackend() {
   }
 
   didSpawnBackend = true;
-  backendProcess = spawn('java', ['-jar', jarPath, `--server.port=${BACKEND_PORT}`], {
+  backendProcess = spawn('java', [...BACKEND_JVM_ARGS, '-jar', jarPath, `--server.port=${BACKEND_PORT}`], {
     cwd: BACKEND_DIR,
     stdio: 'inherit',
   });
@@ -10,10 +10,21 @@ interface ExportJobView {
   processedFiles: number
   successCount: number
   failureCount: number
+  skippedCount?: number
   progress: number
   createdAt: string
   updatedAt: string
+  resultCount?: number
   results?: Array<{ sourceName: string; outputName?: string; success: boolean; message?: string }>
+  stageQueueDepths?: Record<string, number>
+  compacted?: boolean
+}
+
+// 进度事件只携带变化的字段；results 为从 resultsFrom 位置起新增的结果，未给出 resultsFrom 时接在已有结果之后
+type ExportJobDelta = Partial<Omit<ExportJobView, 'results'>> & {
+  id: string
+  resultsFrom?: number
+  results?: ExportJobView['results']
 }
 
 interface SubmitExportPayload {
@@ -21,7 +32,16 @@ interface SubmitExportPayload {
   config: Record<string, unknown>
 }
 
+interface ExportResultPage {
+  results: NonNullable<ExportJobView['results']>
+  next: number
+  total: number
+  compacted?: boolean
+}
+
 const POLL_INTERVAL = 2000
+const RESULT_PAGE_SIZE = 500
+const FINISHED_STATUSES = ['COMPLETED', 'FAILED', 'CANCELLED']
 
 export function useExportJobs() {
   const activeJobId = ref<string | null>(null)
@@ -29,6 +49,8 @@ export function useExportJobs() {
   const loading = ref(false)
   const error = ref<string | null>(null)
   const pollingHandles = new Map<string, number>()
+  const eventSources = new Map<string, EventSource>()
+  const uploading = new Set<string>()
 
   const latestJobs = computed(() => Array.from(jobs.values()).sort((a, b) => b.createdAt.localeCompare(a.createdAt)))
   const activeJob = computed(() => (activeJobId.value ? jobs.get(activeJobId.value) ?? null : null))
@@ -37,12 +59,18 @@ export function useExportJobs() {
     loading.value = true
     error.value = null
 
+    // 由前端生成任务 ID，上传过程中即可轮询进度；后端收到每个文件后立即开始处理
+    const jobId = crypto.randomUUID()
     try {
       const formData = new FormData()
       formData.append('config', JSON.stringify(payload.config))
       payload.files.forEach((file) => formData.append('files', file, file.name))
 
-      const response = await fetch('/api/export', {
+      uploading.add(jobId)
+      activeJobId.value = jobId
+      startPolling(jobId)
+
+      const response = await fetch(`/api/export/stream/${encodeURIComponent(jobId)}`, {
         method: 'POST',
         body: formData,
       })
@@ -52,23 +80,115 @@ export function useExportJobs() {
       }
 
       const job = (await response.json()) as ExportJobView
-      jobs.set(job.id, job)
-      activeJobId.value = job.id
-      startPolling(job.id)
+      if (!jobs.has(job.id) || !FINISHED_STATUSES.includes(jobs.get(job.id)!.status)) {
+        mergeSummary(job)
+      }
     } catch (err) {
+      stopPolling(jobId)
       error.value = err instanceof Error ? err.message : '导出失败'
       throw err
     } finally {
+      uploading.delete(jobId)
       loading.value = false
     }
   }
 
+  // 优先通过服务端事件流接收增量进度，连接失败时退回轮询
   function startPolling(jobId: string) {
+    stopPolling(jobId)
+    const source = new EventSource(`/api/export/${encodeURIComponent(jobId)}/events`)
+    eventSources.set(jobId, source)
+    source.addEventListener('progress', (event) => {
+      const job = applyDelta(JSON.parse((event as MessageEvent<string>).data) as ExportJobDelta)
+      if (job && FINISHED_STATUSES.includes(job.status)) {
+        stopPolling(jobId)
+      }
+    })
+    source.onerror = () => {
+      if (eventSources.get(jobId) !== source) {
+        return
+      }
+      source.close()
+      eventSources.delete(jobId)
+      if (uploading.has(jobId)) {
+        // 上传开始前任务尚未创建，稍后重新订阅
+        pollingHandles.set(jobId, window.setTimeout(() => startPolling(jobId), POLL_INTERVAL))
+        return
+      }
+      startStatusPolling(jobId)
+    }
+  }
+
+  function applyDelta(delta: ExportJobDelta) {
+    const { resultsFrom, results, ...fields } = delta
+    const now = new Date().toISOString()
+    const job: ExportJobView = {
+      totalFiles: 0,
+      processedFiles: 0,
+      successCount: 0,
+      failureCount: 0,
+      progress: 0,
+      status: 'QUEUED',
+      createdAt: now,
+      ...jobs.get(delta.id),
+      ...fields,
+      updatedAt: now,
+    }
+    if (fields.message === '') {
+      job.message = undefined
+    }
+    if (fields.currentFile === '') {
+      job.currentFile = undefined
+    }
+    if (fields.compacted) {
+      job.results = undefined
+    }
+    if (results) {
+      // 只订阅部分结果（如失败项）的事件流不带 resultsFrom，结果直接追加
+      const previous = job.results ?? []
+      job.results = (resultsFrom === undefined ? previous : previous.slice(0, resultsFrom)).concat(results)
+    }
+    jobs.set(job.id, job)
+    return job
+  }
+
+  // 列表和状态接口只返回摘要，保留已加载的结果
+  function mergeSummary(summary: ExportJobView) {
+    const existing = jobs.get(summary.id)
+    const job: ExportJobView = { ...summary, results: summary.compacted ? undefined : existing?.results }
+    jobs.set(job.id, job)
+    return job
+  }
+
+  // 按游标分页补齐尚未加载的结果
+  async function loadResults(jobId: string) {
+    let job = jobs.get(jobId)
+    while (job && !job.compacted && (job.results?.length ?? 0) < (job.resultCount ?? 0)) {
+      const after = job.results?.length ?? 0
+      const response = await fetch(
+        `/api/export/${encodeURIComponent(jobId)}/results?after=${after}&limit=${RESULT_PAGE_SIZE}`,
+      )
+      if (!response.ok) {
+        throw new Error(await response.text())
+      }
+      const page = (await response.json()) as ExportResultPage
+      if (page.results.length === 0) {
+        break
+      }
+      job = { ...job, results: (job.results ?? []).slice(0, after).concat(page.results) }
+      jobs.set(jobId, job)
+    }
+  }
+
+  function startStatusPolling(jobId: string) {
     stopPolling(jobId)
     const handle = window.setInterval(async () => {
       try {
         const response = await fetch(`/api/export/${encodeURIComponent(jobId)}/status`)
         if (response.status === 404) {
+          if (uploading.has(jobId)) {
+            return
+          }
           stopPolling(jobId)
           jobs.delete(jobId)
           return
@@ -78,10 +198,10 @@ export function useExportJobs() {
           throw new Error(await response.text())
         }
 
-        const job = (await response.json()) as ExportJobView
-        jobs.set(job.id, job)
+        const job = mergeSummary((await response.json()) as ExportJobView)
+        await loadResults(job.id)
 
-        if (['COMPLETED', 'FAILED', 'CANCELLED'].includes(job.status)) {
+        if (FINISHED_STATUSES.includes(job.status)) {
           stopPolling(jobId)
         }
       } catch (err) {
@@ -93,9 +213,15 @@ export function useExportJobs() {
   }
 
   function stopPolling(jobId: string) {
+    const source = eventSources.get(jobId)
+    if (source) {
+      source.close()
+      eventSources.delete(jobId)
+    }
     const handle = pollingHandles.get(jobId)
     if (handle !== undefined) {
       window.clearInterval(handle)
+      window.clearTimeout(handle)
       pollingHandles.delete(jobId)
     }
   }
@@ -108,8 +234,7 @@ export function useExportJobs() {
       if (!response.ok) {
         throw new Error(await response.text())
       }
-      const job = (await response.json()) as ExportJobView
-      jobs.set(job.id, job)
+      mergeSummary((await response.json()) as ExportJobView)
       stopPolling(jobId)
     } catch (err) {
       error.value = err instanceof Error ? err.message : '取消任务失败'
@@ -124,9 +249,10 @@ export function useExportJobs() {
         throw new Error(await response.text())
       }
       const jobList = (await response.json()) as ExportJobView[]
+      const known = new Map(jobs)
       jobs.clear()
       jobList.forEach((job) => {
-        jobs.set(job.id, job)
+        jobs.set(job.id, { ...job, results: job.compacted ? undefined : known.get(job.id)?.results })
         if (job.status === 'RUNNING' || job.status === 'QUEUED') {
           startPolling(job.id)
         }
@@ -137,7 +263,12 @@ export function useExportJobs() {
   }
 
   function dispose() {
-    pollingHandles.forEach((handle) => window.clearInterval(handle))
+    eventSources.forEach((source) => source.close())
+    eventSources.clear()
+    pollingHandles.forEach((handle) => {
+      window.clearInterval(handle)
+      window.clearTimeout(handle)
+    })
     pollingHandles.clear()
   }
 